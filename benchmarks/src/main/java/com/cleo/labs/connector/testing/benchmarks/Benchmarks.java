@@ -0,0 +1,63 @@
+package com.cleo.labs.connector.testing.benchmarks;
+
+import com.cleo.connector.api.ConnectorConfig;
+import com.cleo.connector.api.ConnectorException;
+import com.cleo.connector.api.command.ConnectorCommandResult;
+import com.cleo.labs.connector.testing.TestConnectorClientBuilder;
+
+/**
+ * Helpers shared by the benchmarks for turning {@code @Param} strings into
+ * a configured {@link TestConnectorClientBuilder}.
+ */
+public class Benchmarks {
+
+    private Benchmarks() {
+    }
+
+    /**
+     * Creates a builder for a schema class named by a {@code @Param}, applying
+     * properties supplied as {@code name=value} pairs separated by {@code ;}
+     * (JMH already uses {@code ,} to separate parameter values).
+     * @param schema the fully qualified connector schema class name
+     * @param properties the (possibly empty) property list
+     * @return a configured builder
+     * @throws ConnectorException if the schema class can't be loaded or is not a schema
+     */
+    public static TestConnectorClientBuilder builder(String schema, String properties) throws ConnectorException {
+        if (schema == null || schema.isEmpty()) {
+            throw new ConnectorException("the schema parameter is required, e.g. -p schema=com.example.MyConnectorSchema");
+        }
+        Class<? extends ConnectorConfig> schemaClass;
+        try {
+            schemaClass = Class.forName(schema).asSubclass(ConnectorConfig.class);
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new ConnectorException(e);
+        }
+        TestConnectorClientBuilder builder = new TestConnectorClientBuilder(schemaClass);
+        if (properties != null) {
+            for (String property : properties.split(";")) {
+                if (!property.trim().isEmpty()) {
+                    String[] nameValue = property.split("=", 2);
+                    if (nameValue.length != 2) {
+                        throw new IllegalArgumentException(String.format("property must be name=value: %s", property));
+                    }
+                    builder.set(nameValue[0].trim(), nameValue[1]);
+                }
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Fails the benchmark on an unsuccessful command rather than quietly
+     * measuring error paths.
+     * @param result the command result
+     * @return the result, if successful
+     */
+    public static ConnectorCommandResult ok(ConnectorCommandResult result) {
+        if (!result.isSuccess()) {
+            throw new IllegalStateException(String.format("command failed: %s", result.getStatus()));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,67 @@
+package com.cleo.labs.connector.testing.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cleo.connector.api.ConnectorClient;
+import com.cleo.connector.api.ConnectorException;
+import com.cleo.labs.connector.testing.TestConnectorClientBuilder;
+
+/**
+ * Measures the cost of obtaining a client from {@link TestConnectorClientBuilder}:
+ * <ul>
+ * <li>{@code uncached}: a new builder and client with the schema metadata
+ *     cache cleared first, i.e. the cost before caching was introduced</li>
+ * <li>{@code cached}: a new builder and client per operation</li>
+ * <li>{@code reused}: another client from an existing builder</li>
+ * </ul>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientBuilderBenchmark {
+
+    @Param({""})
+    public String schema;
+
+    @Param({""})
+    public String properties;
+
+    private TestConnectorClientBuilder builder;
+
+    @Setup(Level.Trial)
+    public void setup() throws ConnectorException {
+        builder = Benchmarks.builder(schema, properties);
+    }
+
+    @Benchmark
+    public ConnectorClient uncached() throws ConnectorException {
+        TestConnectorClientBuilder.clearCache();
+        return Benchmarks.builder(schema, properties).build();
+    }
+
+    @Benchmark
+    public ConnectorClient cached() throws ConnectorException {
+        return Benchmarks.builder(schema, properties).build();
+    }
+
+    @Benchmark
+    public ConnectorClient reused() throws ConnectorException {
+        return builder.build();
+    }
+}
@@ -0,0 +1,136 @@
+package com.cleo.labs.connector.testing.benchmarks;
+
+import static com.cleo.labs.connector.testing.benchmarks.Benchmarks.ok;
+
+import java.io.IOException;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cleo.connector.api.ConnectorClient;
+import com.cleo.connector.api.ConnectorException;
+import com.cleo.connector.api.command.ConnectorCommandResult;
+import com.cleo.labs.connector.testing.Commands;
+import com.cleo.labs.connector.testing.DigestCollector;
+import com.cleo.labs.connector.testing.GeneratedSource;
+
+/**
+ * Round-trip benchmarks for each of the {@link Commands} builders, run against
+ * a client built by {@code TestConnectorClientBuilder} for the connector named
+ * by the {@code schema} parameter.  For example:
+ * <pre>
+ * java -cp benchmarks.jar:myconnector.jar org.openjdk.jmh.Main CommandsBenchmark \
+ *     -p schema=com.example.MyConnectorSchema -p "properties=RootPath=/tmp/x;Timeout=30" \
+ *     -p payloadSize=1024,1048576
+ * </pre>
+ * Each benchmark thread works on its own remote file under {@code folder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CommandsBenchmark {
+
+    private static final AtomicLong sequence = new AtomicLong();
+
+    @Param({""})
+    public String schema;
+
+    @Param({""})
+    public String properties;
+
+    @Param({""})
+    public String folder;
+
+    @Param({"1024", "1048576"})
+    public long payloadSize;
+
+    private ConnectorClient client;
+    private GeneratedSource source;
+    private String path;
+    private String current;
+    private String other;
+
+    @Setup(Level.Trial)
+    public void setup() throws ConnectorException, IOException {
+        client = Benchmarks.builder(schema, properties).build();
+        path = folder + "jmh-" + sequence.incrementAndGet() + ".bin";
+        source = new GeneratedSource(path, payloadSize);
+        ok(Commands.put(source, path).go(client));
+        current = path;
+        other = path + ".renamed";
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws ConnectorException, IOException {
+        Commands.delete(current).go(client);
+    }
+
+    @Benchmark
+    public ConnectorCommandResult dir() throws ConnectorException, IOException {
+        return ok(Commands.dir(folder).go(client));
+    }
+
+    @Benchmark
+    public ConnectorCommandResult put() throws ConnectorException, IOException {
+        return ok(Commands.put(source, path).go(client));
+    }
+
+    @Benchmark
+    public long get() throws ConnectorException, IOException {
+        DigestCollector destination = new DigestCollector(DigestCollector.Algorithm.CRC32).name(path);
+        ok(Commands.get(path, destination).go(client));
+        return destination.bytes();
+    }
+
+    @Benchmark
+    public BasicFileAttributeView attr() throws ConnectorException, IOException {
+        return Commands.attr(path).go(client);
+    }
+
+    @Benchmark
+    public ConnectorCommandResult rename() throws ConnectorException, IOException {
+        ConnectorCommandResult result = ok(Commands.rename(current, other).go(client));
+        String swap = current;
+        current = other;
+        other = swap;
+        return result;
+    }
+
+    /**
+     * Each {@code delete} needs a fresh file, put outside the measured
+     * region.  Per-invocation setup adds timer overhead, which is negligible
+     * next to a remote round trip but not for an in-memory connector.
+     */
+    @State(Scope.Thread)
+    public static class DeleteTarget {
+        public String path;
+
+        @Setup(Level.Invocation)
+        public void setup(CommandsBenchmark benchmark) throws ConnectorException, IOException {
+            path = benchmark.path + ".delete";
+            ok(Commands.put(benchmark.source, path).go(benchmark.client));
+        }
+    }
+
+    @Benchmark
+    public ConnectorCommandResult delete(DeleteTarget target) throws ConnectorException, IOException {
+        return ok(Commands.delete(target.path).go(client));
+    }
+}
@@ -0,0 +1,90 @@
+package com.cleo.labs.connector.testing.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cleo.connector.api.property.ConnectorPropertyException;
+import com.cleo.labs.connector.testing.PatternCache;
+import com.cleo.labs.connector.testing.TestConnectorAction;
+
+/**
+ * Measures filtering a large listing with {@code TestConnectorAction.match},
+ * as a connector does for {@code DIR} with a pattern:
+ * <ul>
+ * <li>{@code uncompiled}: {@code Pattern.matches} per name, i.e. the cost before caching was introduced</li>
+ * <li>{@code regex}: a cached regular expression</li>
+ * <li>{@code glob}: a cached glob</li>
+ * </ul>
+ * Each operation filters the whole listing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatchBenchmark {
+
+    @Param({"100000"})
+    public int entries;
+
+    private String[] names;
+    private TestConnectorAction regex;
+    private TestConnectorAction glob;
+
+    @Setup(Level.Trial)
+    public void setup() throws ConnectorPropertyException {
+        names = new String[entries];
+        for (int i = 0; i < entries; i++) {
+            names[i] = String.format("file-%07d.%s", i, i % 4 == 0 ? "edi" : "txt");
+        }
+        regex = new TestConnectorAction(null, null).patterns(new PatternCache(256, false));
+        glob = new TestConnectorAction(null, null).patterns(new PatternCache(256, true));
+    }
+
+    @Benchmark
+    public int uncompiled() {
+        int matched = 0;
+        for (String name : names) {
+            if (Pattern.matches("file-.*\\.edi", name)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int regex() {
+        int matched = 0;
+        for (String name : names) {
+            if (regex.match("file-.*\\.edi", name)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+
+    @Benchmark
+    public int glob() {
+        int matched = 0;
+        for (String name : names) {
+            if (glob.match("file-*.edi", name)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
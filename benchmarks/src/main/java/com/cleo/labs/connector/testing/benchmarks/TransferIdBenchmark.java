@@ -0,0 +1,84 @@
+package com.cleo.labs.connector.testing.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cleo.labs.connector.testing.TransferIds;
+
+/**
+ * Measures transfer ID generation throughput as the number of threads
+ * generating IDs at once grows, for each {@link TransferIds} strategy:
+ * <ul>
+ * <li>{@code uuid}: {@code UUID.randomUUID()}, as in the host</li>
+ * <li>{@code random}: UUIDs from {@code ThreadLocalRandom}</li>
+ * <li>{@code counter}: a counter striped by thread</li>
+ * </ul>
+ * The generator is shared by all threads, as it is by all transfers of a client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferIdBenchmark {
+
+    @Param({"uuid", "random", "counter"})
+    public String strategy;
+
+    private TransferIds ids;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        switch (strategy) {
+        case "uuid":
+            ids = TransferIds.uuid();
+            break;
+        case "random":
+            ids = TransferIds.random();
+            break;
+        case "counter":
+            ids = TransferIds.counter();
+            break;
+        default:
+            throw new IllegalArgumentException("unknown strategy: " + strategy);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public String threads1() {
+        return ids.next("bench");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String threads4() {
+        return ids.next("bench");
+    }
+
+    @Benchmark
+    @Threads(16)
+    public String threads16() {
+        return ids.next("bench");
+    }
+
+    @Benchmark
+    @Threads(64)
+    public String threads64() {
+        return ids.next("bench");
+    }
+}
@@ -0,0 +1,149 @@
+package com.cleo.labs.connector.testing;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Writes log lines to a {@code PrintStream} from a background thread.
+ * Callers hand over unformatted lines (as {@code Supplier}s) to a bounded
+ * ring buffer and return immediately; the formatting and writing happen on
+ * the drain thread.  When the buffer is full, lines are dropped and counted
+ * rather than blocking the caller.  {@link #close()} writes what is
+ * queued and stops the drain thread.
+ */
+class AsyncLogWriter {
+    private static final int BATCH = 256;
+
+    private final PrintStream out;
+    private final ArrayBlockingQueue<Supplier<String>> ring;
+    private final AtomicLong offered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private volatile Thread drainer = null;
+    private volatile boolean closed = false;
+
+    public AsyncLogWriter(PrintStream out, int capacity) {
+        this.out = out;
+        this.ring = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Queues a line for writing, dropping it if the buffer is full.
+     * @param line the line, formatted when it is written
+     */
+    public void write(Supplier<String> line) {
+        offered.incrementAndGet();
+        if (drainer == null) {
+            start();
+        }
+        if (closed || !ring.offer(line)) {
+            dropped.incrementAndGet();
+        } else if (closed && ring.remove(line)) {
+            // closed while offering: the drain thread may already have
+            // written its last batch, so take the line back and drop it
+            dropped.incrementAndGet();
+        }
+    }
+
+    private synchronized void start() {
+        if (drainer == null && !closed) {
+            Thread thread = new Thread(this::drain, "TestConnectorLogger-drain");
+            thread.setDaemon(true);
+            thread.start();
+            drainer = thread;
+        }
+    }
+
+    private void drain() {
+        List<Supplier<String>> batch = new ArrayList<>(BATCH);
+        while (!closed) {
+            try {
+                batch.add(ring.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            ring.drainTo(batch, BATCH - 1);
+            print(batch);
+        }
+        ring.drainTo(batch);
+        print(batch);
+    }
+
+    private void print(List<Supplier<String>> batch) {
+        for (Supplier<String> line : batch) {
+            try {
+                out.println(line.get());
+            } catch (RuntimeException e) {
+                out.println("LOGGER: " + e);
+            }
+        }
+        out.flush();
+        written.addAndGet(batch.size());
+        batch.clear();
+    }
+
+    /**
+     * Writes the lines queued so far and stops the drain thread, waiting for
+     * it to finish.  Lines written after closing are dropped.
+     */
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            closed = true;
+            thread = drainer;
+        }
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of lines dropped because the buffer was full
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of lines written so far
+     */
+    public long written() {
+        return written.get();
+    }
+
+    /**
+     * Waits until every line queued so far has been written (or dropped).
+     * @param timeout the maximum time to wait
+     * @param unit the units of {@code timeout}
+     * @return {@code true} if everything was written in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = offered.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (written.get() + dropped.get() < target) {
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,276 @@
+package com.cleo.labs.connector.testing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import com.cleo.connector.api.ConnectorClient;
+import com.cleo.connector.api.command.ConnectorCommandResult;
+
+/**
+ * Runs a batch of commands against one or more clients with bounded
+ * parallelism, the way a scheduler would drive a connector: at most
+ * {@code concurrency} commands run at once overall, and at most
+ * {@code perClient} on any one client.
+ * <pre>
+ * Batch.Result result = Commands.batch()
+ *     .generate(10000, n -&gt; Commands.put(source, "file-" + n))
+ *     .concurrency(16)
+ *     .perClient(4)
+ *     .go(client1, client2);
+ * </pre>
+ */
+public class Batch {
+
+    /**
+     * The outcome of one command in the batch.
+     */
+    public static class Item {
+        private final int index;
+        private final String command;
+        private final int client;
+        private final ConnectorCommandResult result;
+        private final Exception exception;
+        private final long startNanos;
+        private final long elapsedNanos;
+
+        private Item(int index, String command, int client, ConnectorCommandResult result, Exception exception,
+                long startNanos, long elapsedNanos) {
+            this.index = index;
+            this.command = command;
+            this.client = client;
+            this.result = result;
+            this.exception = exception;
+            this.startNanos = startNanos;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the position of the command in the batch
+         */
+        public int index() {
+            return index;
+        }
+        public String command() {
+            return command;
+        }
+        /**
+         * @return the index of the client the command ran on
+         */
+        public int client() {
+            return client;
+        }
+        /**
+         * @return the result, or {@code null} if the command threw
+         */
+        public ConnectorCommandResult result() {
+            return result;
+        }
+        /**
+         * @return the exception thrown by the command, or {@code null}
+         */
+        public Exception exception() {
+            return exception;
+        }
+        public boolean isSuccess() {
+            return result != null && result.isSuccess();
+        }
+        /**
+         * @return the start time, relative to the start of the batch
+         */
+        public long startNanos() {
+            return startNanos;
+        }
+        public long elapsedNanos() {
+            return elapsedNanos;
+        }
+    }
+
+    /**
+     * The outcome of the batch: the per-item results in batch order, and
+     * aggregate timing.
+     */
+    public static class Result {
+        private final List<Item> items;
+        private final LatencyHistogram latency;
+        private final long elapsedNanos;
+
+        private Result(List<Item> items, LatencyHistogram latency, long elapsedNanos) {
+            this.items = Collections.unmodifiableList(items);
+            this.latency = latency;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public List<Item> items() {
+            return items;
+        }
+        public LatencyHistogram latency() {
+            return latency;
+        }
+        public long elapsedNanos() {
+            return elapsedNanos;
+        }
+        public long succeeded() {
+            return items.stream().filter(Item::isSuccess).count();
+        }
+        public long failed() {
+            return items.size() - succeeded();
+        }
+        /**
+         * @return completed commands per second
+         */
+        public double throughput() {
+            return elapsedNanos == 0 ? 0.0 : items.size() * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d commands (%d failed) in %.1fs, %.1f/sec, %s",
+                    items.size(), failed(), elapsedNanos / 1e9, throughput(), latency);
+        }
+    }
+
+    private List<IntFunction<? extends Commands.Invocation<ConnectorCommandResult>>> sources = new ArrayList<>();
+    private List<Integer> counts = new ArrayList<>();
+    private int concurrency = 1;
+    private int perClient = Integer.MAX_VALUE;
+
+    /**
+     * Adds a single command to the batch.
+     * @param invocation the command
+     * @return {@code this}
+     */
+    public Batch add(Commands.Invocation<ConnectorCommandResult> invocation) {
+        return generate(1, n -> invocation);
+    }
+
+    /**
+     * Adds a list of commands to the batch.
+     * @param invocations the commands
+     * @return {@code this}
+     */
+    public Batch addAll(List<? extends Commands.Invocation<ConnectorCommandResult>> invocations) {
+        List<? extends Commands.Invocation<ConnectorCommandResult>> copy = new ArrayList<>(invocations);
+        return generate(copy.size(), copy::get);
+    }
+
+    /**
+     * Adds generated commands to the batch.  The generator is called lazily,
+     * as each command is about to run, so large batches need not be
+     * materialized up front.
+     * @param count the number of commands to generate
+     * @param generator called with {@code 0..count-1} to produce each command
+     * @return {@code this}
+     */
+    public Batch generate(int count, IntFunction<? extends Commands.Invocation<ConnectorCommandResult>> generator) {
+        sources.add(generator);
+        counts.add(count);
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of commands in flight overall (1 by default).
+     * @param concurrency the overall limit
+     * @return {@code this}
+     */
+    public Batch concurrency(int concurrency) {
+        if (concurrency <= 0) {
+            throw new IllegalArgumentException(String.format("concurrency must be positive: %d", concurrency));
+        }
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of commands in flight on any one client
+     * (unlimited by default).
+     * @param perClient the per-client limit
+     * @return {@code this}
+     */
+    public Batch perClient(int perClient) {
+        if (perClient <= 0) {
+            throw new IllegalArgumentException(String.format("perClient must be positive: %d", perClient));
+        }
+        this.perClient = perClient;
+        return this;
+    }
+
+    private Commands.Invocation<ConnectorCommandResult> invocation(int index) {
+        for (int i = 0; i < sources.size(); i++) {
+            if (index < counts.get(i)) {
+                return sources.get(i).apply(index);
+            }
+            index -= counts.get(i);
+        }
+        throw new IndexOutOfBoundsException();
+    }
+
+    /**
+     * Acquires an in-flight slot on a client, preferring {@code preferred}
+     * but taking any client with a free slot before waiting.
+     * @return the index of the acquired client
+     */
+    private static int acquire(Semaphore[] slots, int preferred) throws InterruptedException {
+        for (int i = 0; i < slots.length; i++) {
+            int c = (preferred + i) % slots.length;
+            if (slots[c].tryAcquire()) {
+                return c;
+            }
+        }
+        slots[preferred].acquire();
+        return preferred;
+    }
+
+    public Result go(ConnectorClient...clients) throws InterruptedException {
+        return go(Arrays.asList(clients));
+    }
+
+    /**
+     * Runs the batch, spreading commands across the clients round-robin
+     * subject to the per-client limit.
+     * @param clients the clients
+     * @return the per-item results and aggregate timing
+     * @throws InterruptedException if interrupted while waiting for the batch
+     */
+    public Result go(List<ConnectorClient> clients) throws InterruptedException {
+        if (clients.isEmpty()) {
+            throw new IllegalArgumentException("no clients");
+        }
+        int total = counts.stream().mapToInt(Integer::intValue).sum();
+        Item[] items = new Item[total];
+        LatencyHistogram latency = new LatencyHistogram();
+        Semaphore[] slots = new Semaphore[clients.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Semaphore(perClient);
+        }
+        AtomicInteger next = new AtomicInteger();
+        long start = System.nanoTime();
+        Workers.run(Executors.newFixedThreadPool(concurrency), concurrency, w -> {
+            int index;
+            while ((index = next.getAndIncrement()) < total) {
+                int c = acquire(slots, index % slots.length);
+                try {
+                    Commands.Invocation<ConnectorCommandResult> invocation = invocation(index);
+                    ConnectorCommandResult result = null;
+                    Exception exception = null;
+                    long begin = System.nanoTime();
+                    try {
+                        result = invocation.go(clients.get(c));
+                    } catch (Exception e) {
+                        exception = e;
+                    }
+                    long elapsed = latency.recordSince(begin);
+                    items[index] = new Item(index, invocation.command(), c, result, exception, begin - start, elapsed);
+                } finally {
+                    slots[c].release();
+                }
+            }
+        });
+        return new Result(Arrays.asList(items), latency, System.nanoTime() - start);
+    }
+}
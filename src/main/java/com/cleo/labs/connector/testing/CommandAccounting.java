@@ -0,0 +1,155 @@
+package com.cleo.labs.connector.testing;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The heap allocated and CPU time used by each command run through
+ * {@link Commands}, with the bytes moved through {@link StringSource} and
+ * {@link StringCollector} streams, so that allocation regressions show up
+ * as allocated bytes per transferred byte.
+ * <p>
+ * Allocation and CPU time are those of the thread calling {@code go}, as
+ * reported by {@code com.sun.management.ThreadMXBean}; work a connector
+ * hands to other threads is not included, nor are bytes those threads move.
+ * Where the JVM does not support the measurement, the figures are 0.
+ */
+public class CommandAccounting {
+
+    /**
+     * The totals for one command.
+     */
+    public static class Account {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder allocatedBytes = new LongAdder();
+        private final LongAdder cpuNanos = new LongAdder();
+        private final LongAdder transferredBytes = new LongAdder();
+
+        public long calls() {
+            return calls.sum();
+        }
+        public long allocatedBytes() {
+            return allocatedBytes.sum();
+        }
+        public long cpuNanos() {
+            return cpuNanos.sum();
+        }
+        /**
+         * @return the bytes read from {@code StringSource}s and written to {@code StringCollector}s
+         */
+        public long transferredBytes() {
+            return transferredBytes.sum();
+        }
+        public double allocatedBytesPerCall() {
+            long calls = calls();
+            return calls == 0 ? 0.0 : (double) allocatedBytes() / calls;
+        }
+        /**
+         * @return the bytes allocated per byte transferred, or 0 if nothing was transferred
+         */
+        public double allocatedBytesPerByte() {
+            long transferred = transferredBytes();
+            return transferred == 0 ? 0.0 : (double) allocatedBytes() / transferred;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d calls, %.0f bytes/call, %.3fms cpu/call, %d bytes transferred, %.3f allocated/transferred",
+                    calls(), allocatedBytesPerCall(), calls() == 0 ? 0.0 : cpuNanos() / 1e6 / calls(),
+                    transferredBytes(), allocatedBytesPerByte());
+        }
+    }
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static final com.sun.management.ThreadMXBean allocation = allocation(threads);
+    private static final boolean cpuTime = threads.isCurrentThreadCpuTimeSupported();
+    private static final ThreadLocal<long[]> transferred = ThreadLocal.withInitial(() -> new long[1]);
+
+    private static com.sun.management.ThreadMXBean allocation(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+            if (bean.isThreadAllocatedMemorySupported()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+                return bean;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far
+     */
+    static long allocatedBytes() {
+        return allocation == null ? 0 : allocation.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * @return the CPU time used by the current thread so far
+     */
+    static long cpuNanos() {
+        return cpuTime ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * @return the bytes moved through test streams by the current thread so far
+     */
+    static long transferredBytes() {
+        return transferred.get()[0];
+    }
+
+    /**
+     * Counts bytes moved through a test stream by the current thread.
+     * @param n the byte count
+     */
+    static void transferred(long n) {
+        transferred.get()[0] += n;
+    }
+
+    private final ConcurrentHashMap<String, Account> accounts = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the account for a command, creating an empty one if the
+     * command has not been run yet.
+     * @param command the command, e.g. {@code "PUT"}
+     * @return the account
+     */
+    public Account account(String command) {
+        return accounts.computeIfAbsent(command, k -> new Account());
+    }
+
+    void record(String command, long allocatedBytes, long cpuNanos, long transferredBytes) {
+        Account account = account(command);
+        account.calls.increment();
+        account.allocatedBytes.add(allocatedBytes);
+        account.cpuNanos.add(cpuNanos);
+        account.transferredBytes.add(transferredBytes);
+    }
+
+    /**
+     * @return a sorted snapshot of the accounts of the commands run, keyed by command
+     */
+    public Map<String, Account> all() {
+        Map<String, Account> all = new TreeMap<>();
+        accounts.forEach((k, v) -> {
+            if (v.calls() > 0) {
+                all.put(k, v);
+            }
+        });
+        return all;
+    }
+
+    public void reset() {
+        accounts.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        all().forEach((k, v) -> s.append(String.format("%-10s %s%n", k, v)));
+        return s.toString();
+    }
+}
@@ -0,0 +1,90 @@
+package com.cleo.labs.connector.testing;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latency histograms for each command and phase observed by a
+ * {@link TestConnectorLogger}.
+ */
+public class CommandLatencies {
+
+    public enum Phase {
+        /**
+         * from {@code logRequest} to the next {@code logResponse}
+         */
+        REQUEST_TO_RESPONSE,
+        /**
+         * from {@code logFile} to the next {@code logCommandResult}
+         */
+        FILE_TO_RESULT;
+    }
+
+    private static class Key {
+        public final String command;
+        public final Phase phase;
+        public Key(String command, Phase phase) {
+            this.command = command;
+            this.phase = phase;
+        }
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return command.equals(other.command) && phase == other.phase;
+        }
+        @Override
+        public int hashCode() {
+            return Objects.hash(command, phase);
+        }
+        @Override
+        public String toString() {
+            return command + "/" + phase.name();
+        }
+    }
+
+    private final ConcurrentHashMap<Key, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the histogram for a command and phase, creating an empty one
+     * if nothing has been recorded yet.
+     * @param command the command, e.g. {@code "GET"}
+     * @param phase the phase
+     * @return the histogram
+     */
+    public LatencyHistogram histogram(String command, Phase phase) {
+        return histograms.computeIfAbsent(new Key(command, phase), k -> new LatencyHistogram());
+    }
+
+    void record(String command, Phase phase, long nanos) {
+        histogram(command, phase).record(nanos);
+    }
+
+    /**
+     * @return a sorted snapshot of all non-empty histograms, keyed by {@code command/PHASE}
+     */
+    public Map<String, LatencyHistogram> all() {
+        Map<String, LatencyHistogram> all = new TreeMap<>();
+        histograms.forEach((k, v) -> {
+            if (v.count() > 0) {
+                all.put(k.toString(), v);
+            }
+        });
+        return all;
+    }
+
+    public void reset() {
+        histograms.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        all().forEach((k, v) -> s.append(String.format("%-30s %s%n", k, v)));
+        return s.toString();
+    }
+}
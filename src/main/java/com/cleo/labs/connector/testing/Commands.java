@@ -9,10 +9,15 @@ import static com.cleo.connector.api.command.ConnectorCommandName.RENAME;
 import static com.cleo.connector.api.command.ConnectorCommandName.RMDIR;
 
 import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.nio.file.attribute.BasicFileAttributeView;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -28,6 +33,7 @@ import com.cleo.connector.api.directory.Directory.Type;
 import com.cleo.connector.api.directory.Entry;
 import com.cleo.connector.api.interfaces.IConnectorIncoming;
 import com.cleo.connector.api.interfaces.IConnectorOutgoing;
+import com.cleo.connector.shell.ConnectorHostException;
 
 public class Commands {
 
@@ -35,6 +41,114 @@ public class Commands {
     static private final Map<String, Object> NO_PARAMETERS = Collections.emptyMap();
     static private final String NO_DESTINATION = null;
 
+    /**
+     * Something that can be run against a client: each of the command
+     * builders is an {@code Invocation}, which lets drivers like
+     * {@link LoadDriver} treat them uniformly.
+     * @param <T> the type returned by {@code go}
+     */
+    static public interface Invocation<T> {
+        /**
+         * @return the name of the command, e.g. {@code "PUT"}
+         */
+        String command();
+
+        T go(ConnectorClient client) throws ConnectorException, IOException;
+    }
+
+    /**
+     * The body of a command, run by {@link Commands#accounted}.
+     */
+    static private interface Body<T> {
+        T run() throws ConnectorException, IOException;
+    }
+
+    /**
+     * Runs a command, recording the heap allocated and CPU time used by the
+     * calling thread, and the bytes it moved through test streams, in the
+     * client's {@link CommandAccounting}, and the command in the client's
+     * {@link TraceRecorder} if one is set, and marks the command as running
+     * for the client's {@link CommandLatencies} (if the client was built by
+     * the harness).
+     * @param client the client
+     * @param invocation the command
+     * @param body the command
+     * @return the result of {@code body}
+     */
+    static private <T> T accounted(ConnectorClient client, Invocation<T> invocation, Body<T> body)
+            throws ConnectorException, IOException {
+        TestConnector connector = TestConnector.find(client);
+        if (connector == null) {
+            return body.run();
+        }
+        long allocated = CommandAccounting.allocatedBytes();
+        long cpu = CommandAccounting.cpuNanos();
+        long transferred = CommandAccounting.transferredBytes();
+        String previous = connector.logger().begin(invocation.command());
+        long start = System.nanoTime();
+        T result = null;
+        try {
+            result = body.run();
+            return result;
+        } finally {
+            long end = System.nanoTime();
+            connector.logger().end(previous);
+            transferred = CommandAccounting.transferredBytes() - transferred;
+            connector.accounting().record(invocation.command(),
+                    CommandAccounting.allocatedBytes() - allocated,
+                    CommandAccounting.cpuNanos() - cpu,
+                    transferred);
+            TraceRecorder trace = connector.trace();
+            if (trace != null) {
+                trace(trace, invocation, result, start, end - start, transferred);
+            }
+        }
+    }
+
+    /**
+     * Records a command in a trace: its paths, and its payload size from
+     * the source or destination if known, or else from the bytes moved
+     * through test streams.
+     */
+    static private void trace(TraceRecorder trace, Invocation<?> invocation, Object result, long start, long duration,
+            long transferred) {
+        String source = null;
+        String destination = null;
+        long bytes = transferred;
+        if (invocation instanceof Dir) {
+            source = ((Dir) invocation).path;
+            destination = ((Dir) invocation).pattern;
+        } else if (invocation instanceof Put) {
+            Put put = (Put) invocation;
+            source = put.source == null ? null : put.source.getPath();
+            destination = put.destination;
+            if (put.source != null && put.source.getLength() != null) {
+                bytes = put.source.getLength();
+            }
+        } else if (invocation instanceof Get) {
+            Get get = (Get) invocation;
+            source = get.source;
+            destination = get.destination == null ? null : get.destination.getName();
+            if (get.destination instanceof DigestCollector) {
+                bytes = ((DigestCollector) get.destination).bytes();
+            }
+        } else if (invocation instanceof Delete) {
+            source = ((Delete) invocation).source;
+        } else if (invocation instanceof Mkdir) {
+            source = ((Mkdir) invocation).source;
+        } else if (invocation instanceof Rmdir) {
+            source = ((Rmdir) invocation).source;
+        } else if (invocation instanceof Rename) {
+            source = ((Rename) invocation).source;
+            destination = ((Rename) invocation).destination;
+        } else if (invocation instanceof Attr) {
+            source = ((Attr) invocation).source;
+        }
+        boolean success = result instanceof ConnectorCommandResult ? ((ConnectorCommandResult) result).isSuccess()
+                : result != null;
+        trace.record(invocation.command(), source, destination, bytes, start, duration, success);
+    }
+
     static public Dir dir(String path) {
         return new Dir().path(path);
     }
@@ -67,7 +181,19 @@ public class Commands {
         return new Attr().source(path);
     }
 
-    static public class Dir {
+    static public PutFiles putFiles(String pattern, String path) {
+        return new PutFiles().source(pattern).destination(path);
+    }
+
+    static public GetFiles getFiles(String pattern, String path) {
+        return new GetFiles().source(pattern).destination(path);
+    }
+
+    static public Batch batch() {
+        return new Batch();
+    }
+
+    static public class Dir implements Invocation<ConnectorCommandResult> {
         private String path = null;
         private Set<String> options = new HashSet<>();
         private String pattern = null;
@@ -87,14 +213,22 @@ public class Commands {
             return this;
         }
 
+        @Override
+        public String command() {
+            return DIR.name();
+        }
+
+        @Override
         public ConnectorCommandResult go(ConnectorClient client) throws ConnectorException, IOException {
-            DirCommand command = new DirCommand(DIR.name(), options, new Entry(Type.dir).setPath(path), pattern,
-                    NO_DESTINATION, NO_PARAMETERS);
-            return client.doDir(command);
+            return accounted(client, this, () -> {
+                DirCommand command = new DirCommand(DIR.name(), options, new Entry(Type.dir).setPath(path), pattern,
+                        NO_DESTINATION, NO_PARAMETERS);
+                return client.doDir(command);
+            });
         }
     }
 
-    static public class Put {
+    static public class Put implements Invocation<ConnectorCommandResult> {
         private IConnectorOutgoing source = null;
         private String destination = null;
         private Set<String> options = new HashSet<>();
@@ -124,14 +258,22 @@ public class Commands {
             return this;
         }
 
+        @Override
+        public String command() {
+            return PUT.name();
+        }
+
+        @Override
         public ConnectorCommandResult go(ConnectorClient client) throws ConnectorException, IOException {
-            PutCommand command = new PutCommand(PUT, options, new IConnectorOutgoing[] { source },
-                    new Entry(Type.file).setPath(destination), parameters);
-            return client.doPut(command);
+            return accounted(client, this, () -> {
+                PutCommand command = new PutCommand(PUT, options, new IConnectorOutgoing[] { source },
+                        new Entry(Type.file).setPath(destination), parameters);
+                return client.doPut(command);
+            });
         }
     }
 
-    static public class Get {
+    static public class Get implements Invocation<ConnectorCommandResult> {
         private String source = null;
         private IConnectorIncoming destination = null;
         private Set<String> options = new HashSet<>();
@@ -161,14 +303,22 @@ public class Commands {
             return this;
         }
 
+        @Override
+        public String command() {
+            return GET.name();
+        }
+
+        @Override
         public ConnectorCommandResult go(ConnectorClient client) throws ConnectorException, IOException {
-            GetCommand command = new GetCommand(GET, options, new Entry(Type.file).setPath(source), destination,
-                    parameters);
-            return client.doGet(command);
+            return accounted(client, this, () -> {
+                GetCommand command = new GetCommand(GET, options, new Entry(Type.file).setPath(source), destination,
+                        parameters);
+                return client.doGet(command);
+            });
         }
     }
 
-    static public class Delete {
+    static public class Delete implements Invocation<ConnectorCommandResult> {
         private String source = null;
         private Set<String> options = new HashSet<>();
 
@@ -186,14 +336,22 @@ public class Commands {
             return option(option.toString());
         }
 
+        @Override
+        public String command() {
+            return DELETE.name();
+        }
+
+        @Override
         public ConnectorCommandResult go(ConnectorClient client) throws ConnectorException, IOException {
-            OtherCommand command = new OtherCommand(DELETE.name(), options, source, NO_DESTINATION, NO_PARAMETERS,
-                    DELETE.name() + " " + source);
-            return client.doOther(command);
+            return accounted(client, this, () -> {
+                OtherCommand command = new OtherCommand(DELETE.name(), options, source, NO_DESTINATION, NO_PARAMETERS,
+                        DELETE.name() + " " + source);
+                return client.doOther(command);
+            });
         }
     }
 
-    static public class Mkdir {
+    static public class Mkdir implements Invocation<ConnectorCommandResult> {
         private String source = null;
 
         public Mkdir source(String source) {
@@ -201,14 +359,22 @@ public class Commands {
             return this;
         }
 
+        @Override
+        public String command() {
+            return MKDIR.name();
+        }
+
+        @Override
         public ConnectorCommandResult go(ConnectorClient client) throws ConnectorException, IOException {
-            OtherCommand command = new OtherCommand(MKDIR.name(), NO_OPTIONS, source, NO_DESTINATION, NO_PARAMETERS,
-                    MKDIR.name() + " " + source);
-            return client.doOther(command);
+            return accounted(client, this, () -> {
+                OtherCommand command = new OtherCommand(MKDIR.name(), NO_OPTIONS, source, NO_DESTINATION, NO_PARAMETERS,
+                        MKDIR.name() + " " + source);
+                return client.doOther(command);
+            });
         }
     }
 
-    static public class Rmdir {
+    static public class Rmdir implements Invocation<ConnectorCommandResult> {
         private String source = null;
 
         public Rmdir source(String source) {
@@ -216,14 +382,22 @@ public class Commands {
             return this;
         }
 
+        @Override
+        public String command() {
+            return RMDIR.name();
+        }
+
+        @Override
         public ConnectorCommandResult go(ConnectorClient client) throws ConnectorException, IOException {
-            OtherCommand command = new OtherCommand(RMDIR.name(), NO_OPTIONS, source, NO_DESTINATION, NO_PARAMETERS,
-                    RMDIR.name() + " " + source);
-            return client.doOther(command);
+            return accounted(client, this, () -> {
+                OtherCommand command = new OtherCommand(RMDIR.name(), NO_OPTIONS, source, NO_DESTINATION, NO_PARAMETERS,
+                        RMDIR.name() + " " + source);
+                return client.doOther(command);
+            });
         }
     }
 
-    static public class Rename {
+    static public class Rename implements Invocation<ConnectorCommandResult> {
         private String source = null;
         private String destination = null;
 
@@ -237,14 +411,22 @@ public class Commands {
             return this;
         }
 
+        @Override
+        public String command() {
+            return RENAME.name();
+        }
+
+        @Override
         public ConnectorCommandResult go(ConnectorClient client) throws ConnectorException, IOException {
-            OtherCommand command = new OtherCommand(RENAME.name(), NO_OPTIONS, source, destination, NO_PARAMETERS,
-                    RENAME.name() + " " + source + " " + destination);
-            return client.doOther(command);
+            return accounted(client, this, () -> {
+                OtherCommand command = new OtherCommand(RENAME.name(), NO_OPTIONS, source, destination, NO_PARAMETERS,
+                        RENAME.name() + " " + source + " " + destination);
+                return client.doOther(command);
+            });
         }
     }
 
-    static public class Attr {
+    static public class Attr implements Invocation<BasicFileAttributeView> {
         private String source = null;
 
         public Attr source(String source) {
@@ -252,8 +434,158 @@ public class Commands {
             return this;
         }
 
+        @Override
+        public String command() {
+            return "ATTR";
+        }
+
+        @Override
         public BasicFileAttributeView go(ConnectorClient client) throws ConnectorException, IOException {
-            return (BasicFileAttributeView)client.doGetAttributes(source);
+            return accounted(client, this, () -> {
+                return (BasicFileAttributeView)client.doGetAttributes(source);
+            });
+        }
+    }
+
+    /**
+     * A multi-file PUT, the way the host runs one: the files in the outbox
+     * matching {@code source} (see {@link TestConnectorAction#findFiles(String)})
+     * are each sent with a PUT to {@code destination}.
+     */
+    static public class PutFiles implements Invocation<List<ConnectorCommandResult>> {
+        private String source = null;
+        private String destination = null;
+        private Set<String> options = new HashSet<>();
+
+        public PutFiles source(String source) {
+            this.source = source;
+            return this;
+        }
+
+        public PutFiles destination(String destination) {
+            this.destination = destination;
+            return this;
+        }
+
+        public PutFiles option(String option) {
+            this.options.add(option);
+            return this;
+        }
+
+        @Override
+        public String command() {
+            return PUT.name();
+        }
+
+        @Override
+        public List<ConnectorCommandResult> go(ConnectorClient client) throws ConnectorException, IOException {
+            IConnectorOutgoing[] sources;
+            try {
+                sources = TestConnector.of(client).action().findFiles(source);
+            } catch (ConnectorHostException e) {
+                throw new ConnectorException(e);
+            }
+            List<ConnectorCommandResult> results = new ArrayList<>(sources.length);
+            for (IConnectorOutgoing outgoing : sources) {
+                Put put = new Put().source(outgoing)
+                        .destination(destination == null ? outgoing.getName() : destination + "/" + outgoing.getName());
+                options.forEach(put::option);
+                results.add(put.go(client));
+            }
+            return results;
+        }
+    }
+
+    /**
+     * A multi-file GET, the way the host runs one: the files listed by a DIR
+     * of the folder of {@code source} whose names match its last element (a
+     * glob pattern) are each received into the inbox at {@code destination}
+     * (see {@link TestConnectorAction#getIncoming(String, Entry, String)}).
+     */
+    static public class GetFiles implements Invocation<GetFiles.Result> {
+        /**
+         * The outcome of a multi-file GET: the DIR that listed the files,
+         * and a GET for each matching file (none if the listing failed).
+         */
+        static public class Result {
+            private final ConnectorCommandResult listing;
+            private final List<ConnectorCommandResult> gets;
+
+            private Result(ConnectorCommandResult listing, List<ConnectorCommandResult> gets) {
+                this.listing = listing;
+                this.gets = Collections.unmodifiableList(gets);
+            }
+
+            /**
+             * @return the result of the DIR of the source folder
+             */
+            public ConnectorCommandResult listing() {
+                return listing;
+            }
+            /**
+             * @return the results of the GETs, in listing order
+             */
+            public List<ConnectorCommandResult> gets() {
+                return gets;
+            }
+        }
+
+        private String source = null;
+        private String destination = null;
+        private Set<String> options = new HashSet<>();
+
+        public GetFiles source(String source) {
+            this.source = source;
+            return this;
+        }
+
+        public GetFiles destination(String destination) {
+            this.destination = destination;
+            return this;
+        }
+
+        public GetFiles option(String option) {
+            this.options.add(option);
+            return this;
+        }
+
+        @Override
+        public String command() {
+            return GET.name();
+        }
+
+        @Override
+        public Result go(ConnectorClient client) throws ConnectorException, IOException {
+            String path = TestConnectorFile.normalize(source);
+            int slash = path.lastIndexOf('/');
+            String folder = slash < 0 ? "" : path.substring(0, slash);
+            PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + path.substring(slash + 1));
+            ConnectorCommandResult listing = dir(folder).go(client);
+            List<ConnectorCommandResult> results = new ArrayList<>();
+            if (!listing.isSuccess() || !listing.getDirEntries().isPresent()) {
+                return new Result(listing, results);
+            }
+            TestConnectorAction action = TestConnector.of(client).action();
+            for (Entry entry : listing.getDirEntries().get()) {
+                String name = TestConnectorFile.normalize(entry.getPath());
+                if (entry.isDir() || !matcher.matches(Paths.get(name.substring(name.lastIndexOf('/') + 1)))) {
+                    continue;
+                }
+                FileCollector incoming;
+                try {
+                    incoming = (FileCollector) action.getIncoming(destination, entry, action.genTransferId(GET.name()));
+                } catch (ConnectorHostException e) {
+                    throw new ConnectorException(e);
+                }
+                try {
+                    Get get = new Get().source(entry.getPath()).destination(incoming);
+                    options.forEach(get::option);
+                    results.add(get.go(client));
+                } finally {
+                    incoming.close();
+                }
+            }
+            return new Result(listing, results);
         }
     }
 }
@@ -0,0 +1,206 @@
+package com.cleo.labs.connector.testing;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Wire-level accounting for the streams a connector obtains through
+ * {@link TestConnectorConnection}: bytes and calls in each direction, the
+ * distribution of call sizes, and the time the connector spent blocked in
+ * the underlying streams (including any {@link NetworkProfile} shaping).
+ * Collected only when turned on with
+ * {@link TestConnectorClientBuilder#connectionStats(boolean)}.
+ * <p>
+ * Call sizes are kept in power-of-two buckets: bucket {@code 0} counts
+ * single-byte calls, and bucket {@code b} counts calls of
+ * {@code 2^(b-1)+1..2^b} bytes.  A connector writing through an unbuffered
+ * stream shows up as a large {@code writesAtMost(1)}.
+ */
+public class ConnectionStats {
+
+    private static final int BUCKETS = 32;
+
+    /**
+     * Counters for one direction.
+     */
+    public static class Direction {
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final AtomicLongArray sizes = new AtomicLongArray(BUCKETS);
+
+        private void record(long n, long elapsed) {
+            bytes.add(n);
+            calls.increment();
+            nanos.add(elapsed);
+            sizes.incrementAndGet(bucket(n));
+        }
+
+        public long bytes() {
+            return bytes.sum();
+        }
+        /**
+         * @return the number of read or write calls that transferred data
+         */
+        public long calls() {
+            return calls.sum();
+        }
+        /**
+         * @return the time spent blocked in the underlying stream
+         */
+        public long blockedNanos() {
+            return nanos.sum();
+        }
+        /**
+         * @return the mean bytes per call
+         */
+        public double meanCallSize() {
+            long calls = calls();
+            return calls == 0 ? 0.0 : (double) bytes() / calls;
+        }
+        /**
+         * @return bytes per second of blocked time
+         */
+        public double throughput() {
+            long nanos = blockedNanos();
+            return nanos == 0 ? 0.0 : bytes() * 1e9 / nanos;
+        }
+        /**
+         * @return the call counts by power-of-two size bucket
+         */
+        public long[] sizes() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = sizes.get(i);
+            }
+            return counts;
+        }
+        /**
+         * @param size a call size, rounded up to a power of two
+         * @return the number of calls transferring at most {@code size} bytes
+         */
+        public long callsAtMost(long size) {
+            long count = 0;
+            for (int i = 0; i <= bucket(size); i++) {
+                count += sizes.get(i);
+            }
+            return count;
+        }
+        private void reset() {
+            bytes.reset();
+            calls.reset();
+            nanos.reset();
+            for (int i = 0; i < BUCKETS; i++) {
+                sizes.set(i, 0);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d bytes in %d calls (mean %.1f), blocked %.3fs",
+                    bytes(), calls(), meanCallSize(), blockedNanos() / 1e9);
+        }
+    }
+
+    private final Direction read = new Direction();
+    private final Direction write = new Direction();
+
+    static int bucket(long n) {
+        return n <= 1 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(n - 1));
+    }
+
+    public Direction read() {
+        return read;
+    }
+
+    public Direction write() {
+        return write;
+    }
+
+    public long bytesRead() {
+        return read.bytes();
+    }
+
+    public long bytesWritten() {
+        return write.bytes();
+    }
+
+    /**
+     * @param size a call size
+     * @return the number of write calls of at most {@code size} bytes
+     */
+    public long writesAtMost(long size) {
+        return write.callsAtMost(size);
+    }
+
+    /**
+     * @param size a call size
+     * @return the number of read calls of at most {@code size} bytes
+     */
+    public long readsAtMost(long size) {
+        return read.callsAtMost(size);
+    }
+
+    public void reset() {
+        read.reset();
+        write.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "read " + read + ", write " + write;
+    }
+
+    class CountingInputStream extends FilterInputStream {
+        public CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = System.nanoTime();
+            int b = super.read();
+            if (b >= 0) {
+                read.record(1, System.nanoTime() - start);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                read.record(n, System.nanoTime() - start);
+            }
+            return n;
+        }
+    }
+
+    class CountingOutputStream extends FilterOutputStream {
+        public CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = System.nanoTime();
+            out.write(b);
+            write.record(1, System.nanoTime() - start);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = System.nanoTime();
+            out.write(b, off, len);
+            if (len > 0) {
+                write.record(len, System.nanoTime() - start);
+            }
+        }
+    }
+}
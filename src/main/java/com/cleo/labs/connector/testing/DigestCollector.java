@@ -0,0 +1,278 @@
+package com.cleo.labs.connector.testing;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import com.cleo.connector.api.interfaces.IConnectorFile;
+import com.cleo.connector.api.interfaces.IConnectorIncoming;
+
+/**
+ * A destination that keeps only a running byte count and a streaming digest
+ * of what it receives, so that downloads of any size can be verified using
+ * near-zero heap.  Compare the result with {@link #matches(GeneratedSource)}
+ * or with a digest computed elsewhere.
+ */
+public class DigestCollector implements IConnectorIncoming {
+
+    public enum Algorithm {
+        SHA256,
+        CRC32,
+        CRC32C;
+
+        Digester newDigester() {
+            switch (this) {
+            case SHA256:
+                try {
+                    return new MessageDigester(MessageDigest.getInstance("SHA-256"));
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException(e);
+                }
+            case CRC32:
+                return new ChecksumDigester(new CRC32());
+            case CRC32C:
+                try {
+                    // java.util.zip.CRC32C is Java 9+
+                    return new ChecksumDigester((Checksum) Class.forName("java.util.zip.CRC32C").newInstance());
+                } catch (ClassNotFoundException | InstantiationException | IllegalAccessException e) {
+                    throw new UnsupportedOperationException("CRC32C requires Java 9 or later", e);
+                }
+            default:
+                throw new IllegalArgumentException(this.name());
+            }
+        }
+    }
+
+    /**
+     * Common face of {@code MessageDigest} and {@code Checksum}.
+     */
+    interface Digester {
+        void update(byte[] b, int off, int len);
+        byte[] finish();
+    }
+
+    private static class MessageDigester implements Digester {
+        private MessageDigest digest;
+        public MessageDigester(MessageDigest digest) {
+            this.digest = digest;
+        }
+        @Override
+        public void update(byte[] b, int off, int len) {
+            digest.update(b, off, len);
+        }
+        @Override
+        public byte[] finish() {
+            return digest.digest();
+        }
+    }
+
+    private static class ChecksumDigester implements Digester {
+        private Checksum checksum;
+        public ChecksumDigester(Checksum checksum) {
+            this.checksum = checksum;
+        }
+        @Override
+        public void update(byte[] b, int off, int len) {
+            checksum.update(b, off, len);
+        }
+        @Override
+        public byte[] finish() {
+            return ByteBuffer.allocate(4).putInt((int) checksum.getValue()).array();
+        }
+    }
+
+    /**
+     * The sink handed to the connector: counts, digests and timestamps
+     * everything written, and keeps nothing else.  Writes fail once the
+     * digest has been computed.
+     */
+    private class DigestStream extends OutputStream {
+        private final byte[] one = new byte[1];
+
+        @Override
+        public void write(int b) throws IOException {
+            one[0] = (byte) b;
+            write(one, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            synchronized (DigestCollector.this) {
+                if (digest != null) {
+                    throw new IOException("digest already computed, no more content can be received");
+                }
+                long now = System.nanoTime();
+                if (first == 0) {
+                    first = now;
+                }
+                last = now;
+                digester.update(b, off, len);
+                bytes += len;
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (DigestCollector.this) {
+                if (first != 0) {
+                    last = System.nanoTime();
+                }
+            }
+        }
+    }
+
+    Algorithm algorithm;
+    Digester digester;
+    OutputStream out = new DigestStream();
+    volatile OutputStream stream = null; // the filtered stream for the next transfer, cleared by getStream
+    byte[] digest = null;
+    long bytes = 0;
+    long first = 0;
+    long last = 0;
+    String transferId = null;
+    String name = null;
+
+    public DigestCollector(Algorithm algorithm) {
+        this.algorithm = algorithm;
+        this.digester = algorithm.newDigester();
+    }
+
+    public DigestCollector() {
+        this(Algorithm.SHA256);
+    }
+
+    public DigestCollector name(String name) {
+        this.name = name;
+        return this;
+    }
+    public String name() {
+        return name;
+    }
+
+    public Algorithm algorithm() {
+        return algorithm;
+    }
+
+    /**
+     * @return the number of bytes received so far
+     */
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    /**
+     * Completes and returns the digest.  Once the digest is computed, the
+     * collector receives no further content: later writes throw an
+     * {@code IOException}.
+     * @return the digest of all bytes received
+     */
+    public synchronized byte[] digest() {
+        if (digest == null) {
+            digest = digester.finish();
+        }
+        return digest.clone();
+    }
+
+    public String hex() {
+        StringBuilder s = new StringBuilder();
+        for (byte b : digest()) {
+            s.append(String.format("%02x", b));
+        }
+        return s.toString();
+    }
+
+    /**
+     * Checks the received content against the content of a generated source.
+     * @param source the source that was supposedly transferred
+     * @return {@code true} if both the length and the digest match
+     */
+    public boolean matches(GeneratedSource source) {
+        return bytes() == source.length() && Arrays.equals(digest(), source.digest(algorithm));
+    }
+
+    /**
+     * @return the nanoseconds between the first and last write (or close)
+     */
+    public synchronized long elapsedNanos() {
+        return last - first;
+    }
+
+    /**
+     * @return the observed transfer rate, measured from the first write to
+     * the last write (or close), or 0 if not enough has been received to tell
+     */
+    public synchronized double bytesPerSecond() {
+        long elapsed = last - first;
+        if (elapsed <= 0) {
+            return 0.0;
+        }
+        return bytes * 1e9 / elapsed;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %s (%d bytes, %.1f bytes/sec)", algorithm.name(), hex(), bytes(), bytesPerSecond());
+    }
+
+    @Override
+    public IConnectorIncoming setFile(IConnectorFile file) {
+        throw new UnsupportedOperationException();
+    }
+    @Override
+    public IConnectorIncoming setStream(OutputStream stream) {
+        this.stream = stream;
+        return this;
+    }
+    @Override
+    public boolean isFile() {
+        return false;
+    }
+    @Override
+    public IConnectorFile getFile() {
+        return null;
+    }
+    @Override
+    public boolean isStream() {
+        return true;
+    }
+    @Override
+    public OutputStream getStream() {
+        OutputStream stream = this.stream;
+        this.stream = null;
+        return stream != null ? stream : out;
+    }
+    @Override
+    public void setTransferId(String transferId) {
+        this.transferId = transferId;
+    }
+    @Override
+    public String getTransferId() {
+        return transferId;
+    }
+    @Override
+    public String getName() {
+        return name;
+    }
+    @Override
+    public String getPath() {
+        return name;
+    }
+    @Override
+    public IConnectorFile getReceivedboxCopy() {
+        return null;
+    }
+    @Override
+    public void setMetadata(Map<String, String> metadata) {
+        throw new UnsupportedOperationException();
+    }
+    @Override
+    public Map<String, String> getMetadata() {
+        return null;
+    }
+}
@@ -0,0 +1,287 @@
+package com.cleo.labs.connector.testing;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.cleo.connector.api.ConnectorClient;
+import com.cleo.connector.api.ConnectorException;
+import com.cleo.connector.api.command.ConnectorCommandResult;
+import com.cleo.connector.api.directory.Entry;
+
+/**
+ * Stresses {@code DIR} on a large folder: fills a folder with many entries,
+ * then times listing it with and without patterns, checking each entry with
+ * a visitor as it is walked and measuring the heap retained by the result.
+ * <pre>
+ * DirStress.Report report = new DirStress(client)
+ *     .folder("stress")
+ *     .entries(100000)
+ *     .pattern("glob:*.edi")
+ *     .run(e -&gt; assertFalse(e.isDir()));
+ * </pre>
+ * Entries are named {@code entry-NNNNNNN.edi} for every fourth entry and
+ * {@code entry-NNNNNNN.txt} otherwise, so {@code glob:*.edi} matches a
+ * quarter of them.  Unprefixed patterns are regular expressions unless
+ * globs were chosen with {@link TestConnectorClientBuilder#patterns(int, boolean)}.
+ */
+public class DirStress {
+
+    /**
+     * Creates the entries in the folder.  The default filler uses
+     * concurrent, empty {@code PUT}s through the client; a connector with
+     * a local back end can fill it much faster directly.
+     */
+    public interface Filler {
+        void fill(String folder, List<String> names) throws Exception;
+    }
+
+    /**
+     * The timing and footprint of one listing.
+     */
+    public static class Listing {
+        private final String pattern;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private long entries;
+        private long retainedBytes;
+
+        private Listing(String pattern) {
+            this.pattern = pattern;
+        }
+
+        /**
+         * @return the pattern, or {@code null} for an unfiltered listing
+         */
+        public String pattern() {
+            return pattern;
+        }
+        public LatencyHistogram latency() {
+            return latency;
+        }
+        /**
+         * @return the number of entries returned by the last listing
+         */
+        public long entries() {
+            return entries;
+        }
+        /**
+         * @return the heap retained by the last listing result, or -1 if not measured
+         */
+        public long retainedBytes() {
+            return retainedBytes;
+        }
+        public double retainedBytesPerEntry() {
+            return entries == 0 || retainedBytes < 0 ? 0.0 : (double) retainedBytes / entries;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("DIR%s: %d entries, %s, %.0f bytes/entry", pattern == null ? "" : " " + pattern,
+                    entries, latency, retainedBytesPerEntry());
+        }
+    }
+
+    /**
+     * The outcome of a {@link DirStress#run(Consumer)}.
+     */
+    public static class Report {
+        private final long fillNanos;
+        private final List<Listing> listings;
+
+        private Report(long fillNanos, List<Listing> listings) {
+            this.fillNanos = fillNanos;
+            this.listings = Collections.unmodifiableList(listings);
+        }
+
+        /**
+         * @return the time taken to fill the folder, or 0 if it was not filled
+         */
+        public long fillNanos() {
+            return fillNanos;
+        }
+        /**
+         * @return the listings, unfiltered first and then one per pattern
+         */
+        public List<Listing> listings() {
+            return listings;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder();
+            s.append(String.format("fill %.1fs", fillNanos / 1e9));
+            listings.forEach(l -> s.append('\n').append(l));
+            return s.toString();
+        }
+    }
+
+    private final ConnectorClient client;
+    private String folder = "";
+    private int entries = 100000;
+    private List<String> patterns = new ArrayList<>();
+    private int iterations = 5;
+    private boolean fill = true;
+    private int fillConcurrency = 8;
+    private Filler filler = null;
+    private boolean measureHeap = true;
+
+    public DirStress(ConnectorClient client) {
+        this.client = client;
+    }
+
+    public DirStress folder(String folder) {
+        this.folder = folder;
+        return this;
+    }
+
+    /**
+     * @param entries the number of entries to create (100,000 by default)
+     * @return {@code this}
+     */
+    public DirStress entries(int entries) {
+        this.entries = entries;
+        return this;
+    }
+
+    /**
+     * Adds a filtered listing to the run, in addition to the unfiltered one.
+     * @param pattern a pattern for {@link Commands.Dir#pattern(String)}
+     * @return {@code this}
+     */
+    public DirStress pattern(String pattern) {
+        this.patterns.add(pattern);
+        return this;
+    }
+
+    /**
+     * @param iterations the number of times each listing is timed (5 by default)
+     * @return {@code this}
+     */
+    public DirStress iterations(int iterations) {
+        this.iterations = iterations;
+        return this;
+    }
+
+    /**
+     * @param fill {@code false} to list a folder that was filled earlier
+     * @return {@code this}
+     */
+    public DirStress fill(boolean fill) {
+        this.fill = fill;
+        return this;
+    }
+
+    /**
+     * @param fillConcurrency the number of concurrent {@code PUT}s used by the default filler
+     * @return {@code this}
+     */
+    public DirStress fillConcurrency(int fillConcurrency) {
+        this.fillConcurrency = fillConcurrency;
+        return this;
+    }
+
+    public DirStress filler(Filler filler) {
+        this.filler = filler;
+        return this;
+    }
+
+    /**
+     * @param measureHeap {@code false} to skip the (garbage collecting) heap measurement
+     * @return {@code this}
+     */
+    public DirStress measureHeap(boolean measureHeap) {
+        this.measureHeap = measureHeap;
+        return this;
+    }
+
+    /**
+     * @param n an entry number
+     * @return the name of entry {@code n}
+     */
+    public static String name(int n) {
+        return String.format("entry-%07d.%s", n, n % 4 == 0 ? "edi" : "txt");
+    }
+
+    private String path(String name) {
+        return folder.isEmpty() ? name : folder + "/" + name;
+    }
+
+    private void defaultFill(String folder, List<String> names) throws Exception {
+        Batch.Result result = Commands.batch()
+            .generate(names.size(), n -> Commands.put(new StringSource(names.get(n), ""), path(names.get(n))))
+            .concurrency(fillConcurrency)
+            .go(client);
+        if (result.failed() > 0) {
+            throw new ConnectorException("failed to create " + result.failed() + " of " + names.size() + " entries");
+        }
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    /**
+     * Fills the folder (unless disabled), then times each listing, visiting
+     * every entry of every listing.
+     * @param visitor checks each entry, e.g. with assertions
+     * @return the report
+     * @throws Exception if the fill or a listing fails
+     */
+    public Report run(Consumer<Entry> visitor) throws Exception {
+        long fillNanos = 0;
+        if (fill) {
+            List<String> names = new ArrayList<>(entries);
+            for (int i = 0; i < entries; i++) {
+                names.add(name(i));
+            }
+            long start = System.nanoTime();
+            if (filler != null) {
+                filler.fill(folder, names);
+            } else {
+                defaultFill(folder, names);
+            }
+            fillNanos = System.nanoTime() - start;
+        }
+        List<Listing> listings = new ArrayList<>();
+        listings.add(list(null, visitor));
+        for (String pattern : patterns) {
+            listings.add(list(pattern, visitor));
+        }
+        return new Report(fillNanos, listings);
+    }
+
+    private Listing list(String pattern, Consumer<Entry> visitor) throws Exception {
+        Listing listing = new Listing(pattern);
+        Commands.Dir dir = Commands.dir(folder).pattern(pattern);
+        ConnectorCommandResult result = null;
+        for (int i = 0; i < iterations; i++) {
+            // drop the previous result so that it is not counted in the baseline
+            result = null;
+            long before = measureHeap ? usedHeap() : 0;
+            long start = System.nanoTime();
+            result = dir.go(client);
+            listing.latency.recordSince(start);
+            if (!result.isSuccess() || !result.getDirEntries().isPresent()) {
+                throw new ConnectorException("DIR " + folder + " failed: " + result.getStatus());
+            }
+            // measured while the result is still referenced below
+            listing.retainedBytes = measureHeap ? Math.max(0, usedHeap() - before) : -1;
+            long count = 0;
+            for (Entry entry : result.getDirEntries().get()) {
+                visitor.accept(entry);
+                count++;
+            }
+            listing.entries = count;
+        }
+        return listing;
+    }
+}
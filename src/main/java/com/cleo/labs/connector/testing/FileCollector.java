@@ -0,0 +1,116 @@
+package com.cleo.labs.connector.testing;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import com.cleo.connector.api.interfaces.IConnectorFile;
+import com.cleo.connector.api.interfaces.IConnectorIncoming;
+
+/**
+ * A file-mode destination: {@link #isFile()} is {@code true} and
+ * {@link #getFile()} returns the file, as for a host transfer into the inbox.
+ */
+public class FileCollector implements IConnectorIncoming, Closeable {
+    private TestConnectorFile file;
+    private String transferId = null;
+    private Map<String, String> metadata = null;
+    private OutputStream out = null;
+    private boolean append = false;
+
+    public FileCollector(TestConnectorFile file) {
+        this.file = file;
+    }
+
+    /**
+     * Appends to the file rather than replacing it.
+     * @param append {@code true} to append
+     * @return {@code this}
+     */
+    public FileCollector append(boolean append) {
+        this.append = append;
+        return this;
+    }
+
+    public TestConnectorFile file() {
+        return file;
+    }
+
+    /**
+     * Closes the stream to the file, if one was opened.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+        }
+    }
+
+    @Override
+    public IConnectorIncoming setFile(IConnectorFile file) {
+        if (!(file instanceof TestConnectorFile)) {
+            throw new IllegalArgumentException("not a harness file: " + file);
+        }
+        this.file = (TestConnectorFile) file;
+        this.out = null;
+        return this;
+    }
+    @Override
+    public synchronized IConnectorIncoming setStream(OutputStream stream) {
+        this.out = stream;
+        return this;
+    }
+    @Override
+    public boolean isFile() {
+        return true;
+    }
+    @Override
+    public IConnectorFile getFile() {
+        return file;
+    }
+    @Override
+    public boolean isStream() {
+        return false;
+    }
+    @Override
+    public synchronized OutputStream getStream() {
+        if (out == null) {
+            try {
+                out = file.openOutputStream(append);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return out;
+    }
+    @Override
+    public void setTransferId(String transferId) {
+        this.transferId = transferId;
+    }
+    @Override
+    public String getTransferId() {
+        return transferId;
+    }
+    @Override
+    public String getName() {
+        return file.getName();
+    }
+    @Override
+    public String getPath() {
+        return file.getPath();
+    }
+    @Override
+    public IConnectorFile getReceivedboxCopy() {
+        return null;
+    }
+    @Override
+    public void setMetadata(Map<String, String> metadata) {
+        this.metadata = metadata;
+    }
+    @Override
+    public Map<String, String> getMetadata() {
+        return metadata;
+    }
+}
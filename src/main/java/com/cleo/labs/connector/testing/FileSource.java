@@ -0,0 +1,73 @@
+package com.cleo.labs.connector.testing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import com.cleo.connector.api.interfaces.IConnectorFile;
+import com.cleo.connector.api.interfaces.IConnectorOutgoing;
+
+/**
+ * A file-mode source: {@link #isFile()} is {@code true} and {@link #getFile()}
+ * returns the file, as for a host transfer from the outbox.
+ */
+public class FileSource implements IConnectorOutgoing {
+    private final TestConnectorFile file;
+    private final String path;
+    private String transferId = null;
+    private Map<String, String> metadata = null;
+    /** the filtered stream for the next transfer, cleared by {@code getStream} */
+    private volatile InputStream stream = null;
+
+    public FileSource(TestConnectorFile file, String path) {
+        this.file = file;
+        this.path = path;
+    }
+    public FileSource(TestConnectorFile file) {
+        this(file, file.getName());
+    }
+    @Override
+    public String getDefaultName() { return file.getName(); }
+    @Override
+    public IConnectorFile getFile() { return file; }
+    @Override
+    public Long getLength() { return file.length(); }
+    @Override
+    public Map<String, String> getMetadata() { return metadata; }
+    @Override
+    public String getName() { return path.replaceFirst(".*/", ""); }
+    @Override
+    public String getPath() { return path; }
+    @Override
+    public IConnectorFile getSentboxCopy() { return null; }
+    @Override
+    public InputStream getStream() {
+        InputStream stream = this.stream;
+        this.stream = null;
+        if (stream != null) {
+            return stream;
+        }
+        try {
+            return file.openInputStream();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    @Override
+    public String getTransferId() { return transferId; }
+    @Override
+    public boolean isFile() { return true; }
+    @Override
+    public boolean isForward() { return false; }
+    @Override
+    public boolean isStream() { return false; }
+    @Override
+    public void setForward(boolean arg0) { }
+    @Override
+    public void setMetadata(Map<String, String> metadata) { this.metadata = metadata; }
+    @Override
+    public IConnectorOutgoing setStream(InputStream stream) { this.stream = stream; return this; }
+    @Override
+    public void setTransferId(String transferId) { this.transferId = transferId; }
+}
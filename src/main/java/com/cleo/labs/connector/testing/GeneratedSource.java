@@ -0,0 +1,239 @@
+package com.cleo.labs.connector.testing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+
+import com.cleo.connector.api.interfaces.IConnectorFile;
+import com.cleo.connector.api.interfaces.IConnectorOutgoing;
+
+/**
+ * A source of synthetic content of any length, generated on the fly from a
+ * seed so that memory use is constant no matter how large the payload.
+ * Every call to {@code getStream} replays the same content, and the content at
+ * any offset is a pure function of the seed and the offset, so the matching
+ * bytes can always be regenerated for verification.
+ */
+public class GeneratedSource implements IConnectorOutgoing {
+    public static final long KB = 1024L;
+    public static final long MB = 1024L * KB;
+    public static final long GB = 1024L * MB;
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private String path;
+    private long length;
+    private long seed;
+    /** the filtered stream for the next transfer, cleared by {@code getStream} */
+    private volatile InputStream stream = null;
+
+    public GeneratedSource(String path, long length, long seed) {
+        if (length < 0) {
+            throw new IllegalArgumentException(String.format("length cannot be negative: %d", length));
+        }
+        this.path = path;
+        this.length = length;
+        this.seed = seed;
+    }
+
+    public GeneratedSource(String path, long length) {
+        this(path, length, 0L);
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * SplitMix64 finalizer: a cheap, well-distributed 64-bit mix.
+     * @param z the value to mix
+     * @return the mixed value
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Returns the 8 content bytes of the word at {@code offset/8}, packed
+     * little-endian into a {@code long}.
+     * @param seed the content seed
+     * @param word the word index ({@code offset >>> 3})
+     * @return the packed word
+     */
+    private static long word(long seed, long word) {
+        return mix(seed + word * GOLDEN_GAMMA);
+    }
+
+    /**
+     * Returns the content byte at a given offset.
+     * @param offset the offset (must be less than {@link #length()})
+     * @return the byte at {@code offset}
+     */
+    public byte byteAt(long offset) {
+        return (byte) (word(seed, offset >>> 3) >>> ((offset & 7) << 3));
+    }
+
+    /**
+     * Computes the digest of the full generated content by streaming it
+     * through a {@link DigestCollector}, so memory use stays constant.
+     * @param algorithm the digest algorithm
+     * @return the digest of the content
+     */
+    public byte[] digest(DigestCollector.Algorithm algorithm) {
+        DigestCollector collector = new DigestCollector(algorithm);
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = new GeneratedStream(seed, length); OutputStream out = collector.getStream()) {
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            // generated streams do not throw
+            throw new IllegalStateException(e);
+        }
+        return collector.digest();
+    }
+
+    /**
+     * An {@code InputStream} over the generated content.  Skipping is
+     * O(1), as content is computed from the offset.
+     */
+    private static class GeneratedStream extends InputStream {
+        private final long seed;
+        private final long length;
+        private long position = 0;
+        private long mark = 0;
+
+        public GeneratedStream(long seed, long length) {
+            this.seed = seed;
+            this.length = length;
+        }
+
+        @Override
+        public int read() {
+            if (position >= length) {
+                return -1;
+            }
+            int b = (int) (word(seed, position >>> 3) >>> ((position & 7) << 3)) & 0xff;
+            position++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= length) {
+                return -1;
+            }
+            int n = (int) Math.min(len, length - position);
+            int i = off;
+            int end = off + n;
+            long p = position;
+            // leading partial word
+            while (i < end && (p & 7) != 0) {
+                b[i++] = (byte) (word(seed, p >>> 3) >>> ((p & 7) << 3));
+                p++;
+            }
+            // whole words
+            while (end - i >= 8) {
+                long w = word(seed, p >>> 3);
+                b[i]   = (byte) w;
+                b[i+1] = (byte) (w >>> 8);
+                b[i+2] = (byte) (w >>> 16);
+                b[i+3] = (byte) (w >>> 24);
+                b[i+4] = (byte) (w >>> 32);
+                b[i+5] = (byte) (w >>> 40);
+                b[i+6] = (byte) (w >>> 48);
+                b[i+7] = (byte) (w >>> 56);
+                i += 8;
+                p += 8;
+            }
+            // trailing partial word
+            if (i < end) {
+                long w = word(seed, p >>> 3);
+                while (i < end) {
+                    b[i++] = (byte) (w >>> ((p & 7) << 3));
+                    p++;
+                }
+            }
+            position = p;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, length - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, length - position);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            mark = position;
+        }
+
+        @Override
+        public synchronized void reset() {
+            position = mark;
+        }
+    }
+
+    @Override
+    public String getDefaultName() { return null; }
+    @Override
+    public IConnectorFile getFile() { return null; }
+    @Override
+    public Long getLength() { return length; }
+    @Override
+    public Map<String, String> getMetadata() { return null; }
+    @Override
+    public String getName() { return path.replaceFirst(".*/", ""); }
+    @Override
+    public String getPath() { return path; }
+    @Override
+    public IConnectorFile getSentboxCopy() { return null; }
+    @Override
+    public InputStream getStream() {
+        InputStream stream = this.stream;
+        this.stream = null;
+        return stream != null ? stream : new GeneratedStream(seed, length);
+    }
+    @Override
+    public String getTransferId() { return "transfer-id"; }
+    @Override
+    public boolean isFile() { return false; }
+    @Override
+    public boolean isForward() { return false; }
+    @Override
+    public boolean isStream() { return true; }
+    @Override
+    public void setForward(boolean arg0) { }
+    @Override
+    public void setMetadata(Map<String, String> arg0) { }
+    @Override
+    public IConnectorOutgoing setStream(InputStream stream) { this.stream = stream; return this; }
+    @Override
+    public void setTransferId(String arg0) { }
+}
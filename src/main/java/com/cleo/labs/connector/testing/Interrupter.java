@@ -0,0 +1,431 @@
+package com.cleo.labs.connector.testing;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cleo.connector.api.ConnectorClient;
+import com.cleo.connector.api.interfaces.IConnectorFile;
+import com.cleo.connector.api.interfaces.IConnectorIncoming;
+import com.cleo.connector.api.interfaces.IConnectorOutgoing;
+
+/**
+ * Raises the host's interrupt flag ({@code IConnectorAction.isInterrupted()})
+ * during a command, and measures how quickly the connector stops: the time
+ * from the flag being raised to the command returning and to the transfer
+ * stream being closed, and the bytes transferred after the flag was raised.
+ * <pre>
+ * Interrupter interrupter = new Interrupter().afterBytes(10 * GeneratedSource.MB);
+ * TestConnector.of(client).action().interrupter(interrupter);
+ * Interrupter.Cancellation cancellation =
+ *     interrupter.run(client, Commands.put(interrupter.wrap(source), "big"));
+ * </pre>
+ * The flag is raised after a delay, after a number of bytes have passed
+ * through a stream wrapped with {@link #wrap(IConnectorOutgoing)} or
+ * {@link #wrap(IConnectorIncoming)}, or at a random byte offset.
+ */
+public class Interrupter {
+
+    /**
+     * The outcome of an interrupted command.
+     */
+    public static class Cancellation {
+        private final boolean interrupted;
+        private final Object result;
+        private final Exception exception;
+        private final long returnNanos;
+        private final long closeNanos;
+        private final boolean closedBeforeInterrupt;
+        private final long bytes;
+        private final long bytesAfterInterrupt;
+
+        private Cancellation(boolean interrupted, Object result, Exception exception, long returnNanos,
+                long closeNanos, boolean closedBeforeInterrupt, long bytes, long bytesAfterInterrupt) {
+            this.interrupted = interrupted;
+            this.result = result;
+            this.exception = exception;
+            this.returnNanos = returnNanos;
+            this.closeNanos = closeNanos;
+            this.closedBeforeInterrupt = closedBeforeInterrupt;
+            this.bytes = bytes;
+            this.bytesAfterInterrupt = bytesAfterInterrupt;
+        }
+
+        /**
+         * @return {@code true} if the flag was raised before the command returned
+         */
+        public boolean interrupted() {
+            return interrupted;
+        }
+        /**
+         * @return the value returned by the command, or {@code null}
+         */
+        public Object result() {
+            return result;
+        }
+        /**
+         * @return the exception thrown by the command, or {@code null}
+         */
+        public Exception exception() {
+            return exception;
+        }
+        /**
+         * @return the time from the flag being raised to the command returning, or -1
+         */
+        public long returnNanos() {
+            return returnNanos;
+        }
+        /**
+         * @return the time from the flag being raised to the stream being closed,
+         * or -1 if the stream was not closed (or not wrapped) or was closed
+         * before the flag was raised
+         */
+        public long closeNanos() {
+            return closeNanos;
+        }
+        /**
+         * @return {@code true} if the stream was closed before the flag was raised
+         */
+        public boolean closedBeforeInterrupt() {
+            return closedBeforeInterrupt;
+        }
+        /**
+         * @return the bytes that passed through the wrapped stream in total
+         */
+        public long bytes() {
+            return bytes;
+        }
+        public long bytesAfterInterrupt() {
+            return bytesAfterInterrupt;
+        }
+
+        @Override
+        public String toString() {
+            if (!interrupted) {
+                return String.format("not interrupted, %d bytes", bytes);
+            }
+            return String.format("returned after %.3fms, closed after %s, %d bytes after interrupt (%d total)",
+                    returnNanos / 1e6, closedBeforeInterrupt ? "before interrupt"
+                    : closeNanos < 0 ? "never" : String.format("%.3fms", closeNanos / 1e6),
+                    bytesAfterInterrupt, bytes);
+        }
+    }
+
+    private long delayNanos = -1;
+    private long afterBytes = -1;
+    private long randomBytes = -1;
+    private Random random = new Random();
+
+    private volatile long armed = 0;
+    private volatile long threshold = -1;
+    private volatile long interruptedAt = 0;
+    private volatile long closedAt = 0;
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile long bytesAtInterrupt = 0;
+
+    /**
+     * Raises the flag a fixed time after the command starts.
+     * @param delay the delay
+     * @param unit the units of {@code delay}
+     * @return {@code this}
+     */
+    public Interrupter afterDelay(long delay, TimeUnit unit) {
+        this.delayNanos = unit.toNanos(delay);
+        return this;
+    }
+
+    /**
+     * Raises the flag once {@code bytes} have passed through the wrapped stream.
+     * @param bytes the byte count
+     * @return {@code this}
+     */
+    public Interrupter afterBytes(long bytes) {
+        this.afterBytes = bytes;
+        return this;
+    }
+
+    /**
+     * Raises the flag at a random byte offset, chosen afresh for each run.
+     * @param maxBytes the offset is chosen uniformly below this (e.g. the transfer size)
+     * @param seed the random seed, for reproducible runs
+     * @return {@code this}
+     */
+    public Interrupter atRandom(long maxBytes, long seed) {
+        this.randomBytes = maxBytes;
+        this.random = new Random(seed);
+        return this;
+    }
+
+    /**
+     * Resets the measurements and starts the clock for a new command.
+     * @return {@code this}
+     */
+    public Interrupter arm() {
+        bytes.set(0);
+        bytesAtInterrupt = 0;
+        interruptedAt = 0;
+        closedAt = 0;
+        if (randomBytes > 0) {
+            threshold = (long) (random.nextDouble() * randomBytes);
+        } else {
+            threshold = afterBytes;
+        }
+        armed = System.nanoTime();
+        return this;
+    }
+
+    /**
+     * Lowers the flag and stops the clock, so the action no longer reports
+     * an interrupt once the command is over.  {@link #run} disarms the
+     * interrupter when the command returns.
+     * @return {@code this}
+     */
+    public synchronized Interrupter disarm() {
+        armed = 0;
+        threshold = -1;
+        interruptedAt = 0;
+        return this;
+    }
+
+    /**
+     * Raises the flag now.
+     */
+    public void interrupt() {
+        raise(System.nanoTime());
+    }
+
+    private synchronized void raise(long at) {
+        if (interruptedAt == 0) {
+            interruptedAt = at;
+            bytesAtInterrupt = bytes.get();
+        }
+    }
+
+    /**
+     * The flag, as reported to the connector by {@code isInterrupted()}.
+     * @return {@code true} once the flag has been raised, until disarmed
+     */
+    public boolean isInterrupted() {
+        if (interruptedAt == 0 && armed != 0 && delayNanos >= 0) {
+            long deadline = armed + delayNanos;
+            if (System.nanoTime() - deadline >= 0) {
+                raise(deadline);
+            }
+        }
+        return interruptedAt != 0;
+    }
+
+    private void count(long n) {
+        long total = bytes.addAndGet(n);
+        long t = threshold;
+        if (t >= 0 && total >= t && interruptedAt == 0) {
+            raise(System.nanoTime());
+        } else if (delayNanos >= 0) {
+            isInterrupted();
+        }
+    }
+
+    private void closed() {
+        if (closedAt == 0) {
+            closedAt = System.nanoTime();
+        }
+    }
+
+    private class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+        @Override
+        public void close() throws IOException {
+            closed();
+            super.close();
+        }
+    }
+
+    private class CountingOutputStream extends FilterOutputStream {
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count(1);
+        }
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count(len);
+        }
+        @Override
+        public void close() throws IOException {
+            closed();
+            super.close();
+        }
+    }
+
+    /**
+     * A source whose streams are counted, delegating everything else.
+     */
+    private class CountingOutgoing implements IConnectorOutgoing {
+        private final IConnectorOutgoing outgoing;
+        private volatile InputStream stream = null;
+
+        CountingOutgoing(IConnectorOutgoing outgoing) {
+            this.outgoing = outgoing;
+        }
+
+        @Override
+        public String getDefaultName() { return outgoing.getDefaultName(); }
+        @Override
+        public IConnectorFile getFile() { return outgoing.getFile(); }
+        @Override
+        public Long getLength() { return outgoing.getLength(); }
+        @Override
+        public Map<String, String> getMetadata() { return outgoing.getMetadata(); }
+        @Override
+        public String getName() { return outgoing.getName(); }
+        @Override
+        public String getPath() { return outgoing.getPath(); }
+        @Override
+        public IConnectorFile getSentboxCopy() { return outgoing.getSentboxCopy(); }
+        @Override
+        public InputStream getStream() {
+            InputStream stream = this.stream;
+            this.stream = null;
+            return stream != null ? stream : new CountingInputStream(outgoing.getStream());
+        }
+        @Override
+        public String getTransferId() { return outgoing.getTransferId(); }
+        @Override
+        public boolean isFile() { return outgoing.isFile(); }
+        @Override
+        public boolean isForward() { return outgoing.isForward(); }
+        @Override
+        public boolean isStream() { return outgoing.isStream(); }
+        @Override
+        public void setForward(boolean forward) { outgoing.setForward(forward); }
+        @Override
+        public void setMetadata(Map<String, String> metadata) { outgoing.setMetadata(metadata); }
+        @Override
+        public IConnectorOutgoing setStream(InputStream stream) { this.stream = stream; return this; }
+        @Override
+        public void setTransferId(String transferId) { outgoing.setTransferId(transferId); }
+    }
+
+    /**
+     * A destination whose streams are counted, delegating everything else.
+     */
+    private class CountingIncoming implements IConnectorIncoming {
+        private final IConnectorIncoming incoming;
+        private volatile OutputStream stream = null;
+
+        CountingIncoming(IConnectorIncoming incoming) {
+            this.incoming = incoming;
+        }
+
+        @Override
+        public IConnectorIncoming setFile(IConnectorFile file) { incoming.setFile(file); return this; }
+        @Override
+        public IConnectorIncoming setStream(OutputStream stream) { this.stream = stream; return this; }
+        @Override
+        public boolean isFile() { return incoming.isFile(); }
+        @Override
+        public IConnectorFile getFile() { return incoming.getFile(); }
+        @Override
+        public boolean isStream() { return incoming.isStream(); }
+        @Override
+        public OutputStream getStream() {
+            OutputStream stream = this.stream;
+            this.stream = null;
+            return stream != null ? stream : new CountingOutputStream(incoming.getStream());
+        }
+        @Override
+        public void setTransferId(String transferId) { incoming.setTransferId(transferId); }
+        @Override
+        public String getTransferId() { return incoming.getTransferId(); }
+        @Override
+        public String getName() { return incoming.getName(); }
+        @Override
+        public String getPath() { return incoming.getPath(); }
+        @Override
+        public IConnectorFile getReceivedboxCopy() { return incoming.getReceivedboxCopy(); }
+        @Override
+        public void setMetadata(Map<String, String> metadata) { incoming.setMetadata(metadata); }
+        @Override
+        public Map<String, String> getMetadata() { return incoming.getMetadata(); }
+    }
+
+    /**
+     * Counts the bytes the connector reads from a source.  The source itself
+     * is not changed, so it can be shared or reused.
+     * @param outgoing the source
+     * @return a source delegating to {@code outgoing}, whose streams are counted
+     */
+    public IConnectorOutgoing wrap(IConnectorOutgoing outgoing) {
+        return new CountingOutgoing(outgoing);
+    }
+
+    /**
+     * Counts the bytes the connector writes to a destination.  The
+     * destination itself is not changed, so it can be shared or reused.
+     * @param incoming the destination
+     * @return a destination delegating to {@code incoming}, whose streams are counted
+     */
+    public IConnectorIncoming wrap(IConnectorIncoming incoming) {
+        return new CountingIncoming(incoming);
+    }
+
+    /**
+     * Arms the interrupter and runs a command, measuring the cancellation.
+     * Failures of the command are captured in the result, since an
+     * interrupted command may well fail.
+     * @param client the client, whose action should report this interrupter
+     * @param invocation the command
+     * @return the measurements
+     */
+    public Cancellation run(ConnectorClient client, Commands.Invocation<?> invocation) {
+        arm();
+        Object result = null;
+        Exception exception = null;
+        try {
+            result = invocation.go(client);
+        } catch (Exception e) {
+            exception = e;
+        }
+        long returned = System.nanoTime();
+        isInterrupted(); // a deadline that passed unpolled still counts
+        long at = interruptedAt;
+        long closed = closedAt;
+        long total = bytes.get();
+        long before = bytesAtInterrupt;
+        disarm();
+        if (at == 0) {
+            return new Cancellation(false, result, exception, -1, -1, false, total, 0);
+        }
+        boolean closedBefore = closed != 0 && closed - at < 0;
+        return new Cancellation(true, result, exception, returned - at, closed == 0 || closedBefore ? -1 : closed - at,
+                closedBefore, total, total - before);
+    }
+}
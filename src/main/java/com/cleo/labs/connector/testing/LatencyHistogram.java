@@ -0,0 +1,160 @@
+package com.cleo.labs.connector.testing;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe, fixed-size histogram of nanosecond latencies in the style of
+ * HdrHistogram: values below 128 are counted exactly, and above that each
+ * power of two is split into 64 linear sub-buckets, so any recorded value is
+ * reported to within 1/64 (about 1.6%) of its true value.  Recording is a
+ * couple of shifts and an atomic increment, with no allocation.
+ */
+public class LatencyHistogram {
+    private static final int LINEAR = 128;
+    private static final int SUB_BITS = 6;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = LINEAR + (63 - SUB_BITS) * SUB;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong max = new AtomicLong(0);
+
+    private static int index(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return LINEAR + (shift - 1) * SUB + (int) (value >>> shift) - SUB;
+    }
+
+    private static long lowest(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB + 1;
+        return (long) ((index - LINEAR) % SUB + SUB) << shift;
+    }
+
+    private static long highest(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / SUB + 1;
+        return lowest(index) + (1L << shift) - 1;
+    }
+
+    /**
+     * Records a latency.
+     * @param nanos the latency in nanoseconds (negative values are recorded as 0)
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        min.accumulateAndGet(value, Math::min);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Records the time elapsed since a {@code System.nanoTime()} reading.
+     * @param startNanos the earlier {@code System.nanoTime()}
+     * @return the elapsed nanoseconds
+     */
+    public long recordSince(long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        record(elapsed);
+        return elapsed;
+    }
+
+    /**
+     * Adds all the values recorded in another histogram to this one.
+     * @param other the histogram to add
+     * @return {@code this}
+     */
+    public LatencyHistogram add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            long n = other.counts.get(i);
+            if (n != 0) {
+                counts.addAndGet(i, n);
+            }
+        }
+        count.add(other.count.sum());
+        sum.add(other.sum.sum());
+        min.accumulateAndGet(other.min.get(), Math::min);
+        max.accumulateAndGet(other.max.get(), Math::max);
+        return this;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long min() {
+        return count() == 0 ? 0 : min.get();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = count();
+        return n == 0 ? 0.0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Returns the value at a percentile, i.e. the value below which
+     * {@code percentile} percent of the recorded values fall.
+     * @param percentile the percentile, from 0 to 100
+     * @return the value in nanoseconds, or 0 if nothing was recorded
+     */
+    public long percentile(double percentile) {
+        long n = count();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(max(), (lowest(i) + highest(i)) / 2);
+            }
+        }
+        return max();
+    }
+
+    private static String format(long nanos) {
+        if (nanos < TimeUnit.MICROSECONDS.toNanos(10)) {
+            return nanos + "ns";
+        } else if (nanos < TimeUnit.MILLISECONDS.toNanos(10)) {
+            return String.format("%.1fus", nanos / 1e3);
+        } else if (nanos < TimeUnit.SECONDS.toNanos(10)) {
+            return String.format("%.1fms", nanos / 1e6);
+        }
+        return String.format("%.2fs", nanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d min=%s p50=%s p99=%s p99.9=%s max=%s",
+                count(), format(min()), format(percentile(50)), format(percentile(99)),
+                format(percentile(99.9)), format(max()));
+    }
+}
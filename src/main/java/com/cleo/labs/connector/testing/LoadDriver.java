@@ -0,0 +1,315 @@
+package com.cleo.labs.connector.testing;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+import com.cleo.connector.api.ConnectorClient;
+import com.cleo.connector.api.ConnectorException;
+import com.cleo.connector.api.command.ConnectorCommandResult;
+
+/**
+ * Drives a weighted mix of {@link Commands} against a pool of clients from
+ * many worker threads, and reports aggregate throughput and latency
+ * percentiles for each command.
+ * <pre>
+ * LoadDriver.Report report = new LoadDriver(builder)
+ *     .clients(4)
+ *     .threads(32)
+ *     .duration(30, TimeUnit.SECONDS)
+ *     .command(1, Commands.dir(""))
+ *     .command("PUT", 3, n -&gt; Commands.put(source, "load-" + n))
+ *     .run();
+ * </pre>
+ */
+public class LoadDriver {
+
+    /**
+     * A command in the mix: {@code factory} is called with a unique,
+     * increasing operation number to obtain the invocation to run.
+     */
+    private static class Entry {
+        public String label;
+        public int weight;
+        public LongFunction<? extends Commands.Invocation<?>> factory;
+        public Entry(String label, int weight, LongFunction<? extends Commands.Invocation<?>> factory) {
+            this.label = label;
+            this.weight = weight;
+            this.factory = factory;
+        }
+    }
+
+    /**
+     * Counts and latencies for one command label.
+     */
+    public static class Stats {
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LongAdder errors = new LongAdder();
+
+        public LatencyHistogram latency() {
+            return latency;
+        }
+        public long count() {
+            return latency.count();
+        }
+        public long errors() {
+            return errors.sum();
+        }
+    }
+
+    /**
+     * The outcome of a {@link LoadDriver#run()}.
+     */
+    public static class Report {
+        private final Map<String, Stats> stats;
+        private final long elapsedNanos;
+        private final int clients;
+        private final int threads;
+
+        private Report(Map<String, Stats> stats, long elapsedNanos, int clients, int threads) {
+            this.stats = Collections.unmodifiableMap(stats);
+            this.elapsedNanos = elapsedNanos;
+            this.clients = clients;
+            this.threads = threads;
+        }
+
+        public Map<String, Stats> stats() {
+            return stats;
+        }
+        public Stats stats(String label) {
+            return stats.get(label);
+        }
+        public long elapsedNanos() {
+            return elapsedNanos;
+        }
+        public long count() {
+            return stats.values().stream().mapToLong(Stats::count).sum();
+        }
+        public long errors() {
+            return stats.values().stream().mapToLong(Stats::errors).sum();
+        }
+        /**
+         * @return completed operations per second, across all commands
+         */
+        public double throughput() {
+            return elapsedNanos == 0 ? 0.0 : count() * 1e9 / elapsedNanos;
+        }
+        /**
+         * @param label the command label
+         * @return completed operations per second for one command
+         */
+        public double throughput(String label) {
+            Stats s = stats.get(label);
+            return s == null || elapsedNanos == 0 ? 0.0 : s.count() * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder();
+            s.append(String.format("%d clients, %d threads, %.1fs: %d ops (%d errors), %.1f ops/sec%n",
+                    clients, threads, elapsedNanos / 1e9, count(), errors(), throughput()));
+            for (Map.Entry<String, Stats> e : stats.entrySet()) {
+                s.append(String.format("  %-8s %.1f ops/sec errors=%d %s%n",
+                        e.getKey(), throughput(e.getKey()), e.getValue().errors(), e.getValue().latency()));
+            }
+            return s.toString();
+        }
+    }
+
+    private TestConnectorClientBuilder builder;
+    private Object[] args;
+    private int clients = 1;
+    private int threads = 1;
+    private boolean virtualThreads = true;
+    private long durationNanos = TimeUnit.SECONDS.toNanos(10);
+    private long operations = 0;
+    private List<Entry> mix = new ArrayList<>();
+
+    /**
+     * Creates a load driver building clients from a configured builder.
+     * @param builder the client builder
+     * @param args additional client constructor arguments, as for {@link TestConnectorClientBuilder#build(Object...)}
+     */
+    public LoadDriver(TestConnectorClientBuilder builder, Object...args) {
+        this.builder = builder;
+        this.args = args;
+    }
+
+    /**
+     * Sets the number of clients to build (1 by default).  Worker threads
+     * are assigned to clients round-robin.
+     * @param clients the number of clients
+     * @return {@code this}
+     */
+    public LoadDriver clients(int clients) {
+        if (clients <= 0) {
+            throw new IllegalArgumentException(String.format("clients must be positive: %d", clients));
+        }
+        this.clients = clients;
+        return this;
+    }
+
+    /**
+     * Sets the number of concurrent workers (1 by default).
+     * @param threads the number of workers
+     * @return {@code this}
+     */
+    public LoadDriver threads(int threads) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException(String.format("threads must be positive: %d", threads));
+        }
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Selects whether workers run on virtual threads when the JDK supports
+     * them (the default), or on a fixed pool of platform threads.
+     * @param virtualThreads {@code true} to prefer virtual threads
+     * @return {@code this}
+     */
+    public LoadDriver virtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * Runs for a fixed time (10 seconds by default).
+     * @param duration the run time
+     * @param unit the units of {@code duration}
+     * @return {@code this}
+     */
+    public LoadDriver duration(long duration, TimeUnit unit) {
+        if (duration <= 0) {
+            throw new IllegalArgumentException(String.format("duration must be positive: %d", duration));
+        }
+        this.durationNanos = unit.toNanos(duration);
+        this.operations = 0;
+        return this;
+    }
+
+    /**
+     * Runs until a fixed number of operations have been started, instead
+     * of for a fixed time.
+     * @param operations the total number of operations
+     * @return {@code this}
+     */
+    public LoadDriver operations(long operations) {
+        if (operations <= 0) {
+            throw new IllegalArgumentException(String.format("operations must be positive: %d", operations));
+        }
+        this.operations = operations;
+        return this;
+    }
+
+    /**
+     * Adds a command to the mix.
+     * @param label the label to report the command under
+     * @param weight the relative frequency of the command
+     * @param factory called with a unique operation number to produce the invocation
+     * @return {@code this}
+     */
+    public LoadDriver command(String label, int weight, LongFunction<? extends Commands.Invocation<?>> factory) {
+        if (weight <= 0) {
+            throw new IllegalArgumentException(String.format("weight must be positive: %d", weight));
+        }
+        mix.add(new Entry(label, weight, factory));
+        return this;
+    }
+
+    /**
+     * Adds a command to the mix, reported under its command name and
+     * reused for every operation.
+     * @param weight the relative frequency of the command
+     * @param invocation the command
+     * @return {@code this}
+     */
+    public LoadDriver command(int weight, Commands.Invocation<?> invocation) {
+        return command(invocation.command(), weight, n -> invocation);
+    }
+
+    /**
+     * Returns an executor with one virtual thread per task when running on
+     * a JDK that has them, without requiring one at compile time.
+     * @return an executor, or {@code null} if virtual threads are not available
+     */
+    static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private Entry pick(int totalWeight) {
+        int r = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Entry e : mix) {
+            r -= e.weight;
+            if (r < 0) {
+                return e;
+            }
+        }
+        return mix.get(mix.size() - 1);
+    }
+
+    /**
+     * Builds the clients, runs the mix, and reports the results.
+     * @return the report
+     * @throws ConnectorException if the clients can't be built
+     * @throws InterruptedException if interrupted while waiting for workers
+     */
+    public Report run() throws ConnectorException, InterruptedException {
+        if (mix.isEmpty()) {
+            throw new IllegalStateException("no commands in the mix");
+        }
+        List<ConnectorClient> pool = builder.buildMany(clients, args);
+        Map<String, Stats> stats = new LinkedHashMap<>();
+        for (Entry e : mix) {
+            stats.putIfAbsent(e.label, new Stats());
+        }
+        int totalWeight = mix.stream().mapToInt(e -> e.weight).sum();
+        AtomicLong sequence = new AtomicLong();
+
+        ExecutorService executor = virtualThreads ? virtualThreadExecutor() : null;
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(threads);
+        }
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+        try {
+            Workers.run(executor, threads, w -> {
+                ConnectorClient client = pool.get(w % pool.size());
+                while (true) {
+                    long n = sequence.getAndIncrement();
+                    if (operations > 0 ? n >= operations : System.nanoTime() >= deadline) {
+                        break;
+                    }
+                    Entry e = pick(totalWeight);
+                    Stats s = stats.get(e.label);
+                    long begin = System.nanoTime();
+                    try {
+                        Object result = e.factory.apply(n).go(client);
+                        if (result instanceof ConnectorCommandResult && !((ConnectorCommandResult) result).isSuccess()) {
+                            s.errors.increment();
+                        }
+                    } catch (Exception ex) {
+                        s.errors.increment();
+                    }
+                    s.latency.recordSince(begin);
+                }
+            });
+        } finally {
+            pool.forEach(c -> TestConnector.of(c).close());
+        }
+        return new Report(stats, System.nanoTime() - start, clients, threads);
+    }
+}
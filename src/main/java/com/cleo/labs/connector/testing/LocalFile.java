@@ -0,0 +1,160 @@
+package com.cleo.labs.connector.testing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.cleo.connector.api.interfaces.IConnectorFile;
+
+/**
+ * A file on the local file system, relative to one of the host boxes
+ * configured on {@link TestConnectorAction}.  Content is read and written
+ * through {@code FileChannel}s.
+ */
+public class LocalFile extends TestConnectorFile {
+    private final Path file;
+
+    /**
+     * @param root the box (or other directory) the file belongs to
+     * @param path the path of the file relative to {@code root}
+     * @throws IllegalArgumentException if {@code path} leads outside {@code root}, e.g. through {@code ..}
+     */
+    public LocalFile(Path root, String path) {
+        super(normalize(path));
+        this.file = this.path.isEmpty() ? root : root.resolve(this.path).normalize();
+        if (!file.toAbsolutePath().normalize().startsWith(root.toAbsolutePath().normalize())) {
+            throw new IllegalArgumentException(String.format("path is outside %s: %s", root, path));
+        }
+    }
+
+    /**
+     * @return the location of the file on the local file system
+     */
+    public Path toPath() {
+        return file;
+    }
+
+    @Override
+    public boolean exists() {
+        return Files.exists(file);
+    }
+
+    @Override
+    public boolean isFile() {
+        return Files.isRegularFile(file);
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return Files.isDirectory(file);
+    }
+
+    @Override
+    public long length() {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    @Override
+    public long lastModified() {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    @Override
+    public boolean delete() {
+        try {
+            return Files.deleteIfExists(file);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean mkdir() {
+        try {
+            Files.createDirectory(file);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean mkdirs() {
+        if (Files.isDirectory(file)) {
+            return false;
+        }
+        try {
+            Files.createDirectories(file);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean createNewFile() throws IOException {
+        try {
+            Files.createFile(file);
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean renameTo(IConnectorFile dest) {
+        if (!(dest instanceof LocalFile)) {
+            return false;
+        }
+        try {
+            Files.move(file, ((LocalFile) dest).file);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String[] list() {
+        if (!Files.isDirectory(file)) {
+            return null;
+        }
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(file)) {
+            for (Path entry : entries) {
+                names.add(entry.getFileName().toString());
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+        return Channels.newInputStream(FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    @Override
+    public OutputStream openOutputStream(boolean append) throws IOException {
+        return Channels.newOutputStream(FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING));
+    }
+}
@@ -0,0 +1,293 @@
+package com.cleo.labs.connector.testing;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import com.cleo.connector.api.command.ConnectorCommandResult.Status;
+
+/**
+ * A compact, typed store of the events logged through a {@link TestConnectorLogger}.
+ * Each event is a fixed-size 32-byte record (timestamp, thread, kind, status
+ * and one kind-specific value) kept in chunked {@code ByteBuffer}s, on or off
+ * heap, so that large runs can be checked without any string work.
+ * <p>
+ * Events may be recorded from any number of threads.  Each record is
+ * published by a commit marker written after its fields, and queries stop
+ * at the first slot whose record is not yet committed, so a query made
+ * while threads are still logging sees a consistent prefix of the events.
+ * Queries are exact once the logging threads have finished.
+ */
+public class LogEvents {
+
+    public enum Kind {
+        HINT,
+        DEBUG,
+        /**
+         * {@code logFile}: value is the file number
+         */
+        FILE_GET,
+        /**
+         * {@code logFile}: value is the file number
+         */
+        FILE_PUT,
+        /**
+         * {@code logCommandResult}: value is the file size
+         */
+        RESULT,
+        REQUEST,
+        /**
+         * {@code logResponse}: value is the response code, or -1
+         */
+        RESPONSE,
+        /**
+         * {@code logDetail}: value is the level
+         */
+        DETAIL,
+        WARNING,
+        ERROR,
+        THROWABLE;
+
+        private static final Kind[] kinds = values();
+    }
+
+    private static final Status[] statuses = Status.values();
+
+    private static final int RECORD = 32;
+    private static final int NANOS = 0;
+    private static final int THREAD = 8;
+    private static final int VALUE = 16;
+    private static final int KIND = 24;
+    private static final int STATUS = 28;
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_RECORDS = 1 << CHUNK_BITS;
+
+    /**
+     * The records of {@code CHUNK_RECORDS} events, each published by setting
+     * its commit marker once all of its fields have been written.
+     */
+    private static class Chunk {
+        private final ByteBuffer records;
+        private final AtomicIntegerArray committed = new AtomicIntegerArray(CHUNK_RECORDS);
+
+        private Chunk(boolean offHeap) {
+            this.records = offHeap ? ByteBuffer.allocateDirect(CHUNK_RECORDS * RECORD)
+                                   : ByteBuffer.allocate(CHUNK_RECORDS * RECORD);
+        }
+    }
+
+    /**
+     * A read-only view of one recorded event.
+     */
+    public class Event {
+        private final ByteBuffer chunk;
+        private final int offset;
+
+        private Event(Chunk[] current, long index) {
+            this.chunk = current[(int) (index >>> CHUNK_BITS)].records;
+            this.offset = (int) (index & (CHUNK_RECORDS - 1)) * RECORD;
+        }
+
+        /**
+         * @return the {@code System.nanoTime()} at which the event was logged
+         */
+        public long nanos() {
+            return chunk.getLong(offset + NANOS);
+        }
+        public long threadId() {
+            return chunk.getLong(offset + THREAD);
+        }
+        public Kind kind() {
+            return Kind.kinds[chunk.getInt(offset + KIND)];
+        }
+        /**
+         * @return the status, for events that have one, otherwise {@code null}
+         */
+        public Status status() {
+            int status = chunk.getInt(offset + STATUS);
+            return status < 0 ? null : statuses[status];
+        }
+        /**
+         * @return the kind-specific value (see {@link Kind})
+         */
+        public long value() {
+            return chunk.getLong(offset + VALUE);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d [%d] %s%s value=%d", nanos(), threadId(), kind(),
+                    status() == null ? "" : " " + status(), value());
+        }
+    }
+
+    private final boolean offHeap;
+    private final long capacity;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile Chunk[] chunks = new Chunk[0];
+
+    /**
+     * Creates an event store.
+     * @param offHeap {@code true} to keep records in direct buffers
+     * @param capacity the maximum number of events to keep, after which events are dropped and counted
+     */
+    public LogEvents(boolean offHeap, long capacity) {
+        this.offHeap = offHeap;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Creates an unbounded, on-heap event store.
+     */
+    public LogEvents() {
+        this(false, Long.MAX_VALUE);
+    }
+
+    private Chunk chunk(long index) {
+        int n = (int) (index >>> CHUNK_BITS);
+        Chunk[] current = chunks;
+        if (n < current.length) {
+            return current[n];
+        }
+        synchronized (this) {
+            current = chunks;
+            if (n >= current.length) {
+                long limit = (capacity + CHUNK_RECORDS - 1) >>> CHUNK_BITS;
+                current = Arrays.copyOf(current, (int) Math.min(limit, Math.max(n + 1, current.length * 2L)));
+                for (int i = chunks.length; i < current.length; i++) {
+                    current[i] = new Chunk(offHeap);
+                }
+                chunks = current;
+            }
+            return current[n];
+        }
+    }
+
+    /**
+     * Records an event on the current thread.
+     * @param kind the kind of event
+     * @param status the status, or {@code null}
+     * @param value the kind-specific value
+     */
+    public void record(Kind kind, Status status, long value) {
+        long nanos = System.nanoTime();
+        long index = next.getAndIncrement();
+        if (index >= capacity) {
+            dropped.incrementAndGet();
+            return;
+        }
+        Chunk chunk = chunk(index);
+        int slot = (int) (index & (CHUNK_RECORDS - 1));
+        int offset = slot * RECORD;
+        chunk.records.putLong(offset + NANOS, nanos);
+        chunk.records.putLong(offset + THREAD, Thread.currentThread().getId());
+        chunk.records.putLong(offset + VALUE, value);
+        chunk.records.putInt(offset + KIND, kind.ordinal());
+        chunk.records.putInt(offset + STATUS, status == null ? -1 : status.ordinal());
+        // the ordered write publishes the fields above to any reader that sees the marker
+        chunk.committed.lazySet(slot, 1);
+    }
+
+    /**
+     * @return the number of events recorded, including any still being written
+     */
+    public long size() {
+        return Math.min(next.get(), capacity);
+    }
+
+    /**
+     * @return the number of events dropped because the store was full
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the approximate memory used by the records and their commit markers, in bytes
+     */
+    public long footprint() {
+        return (long) chunks.length * CHUNK_RECORDS * (RECORD + Integer.BYTES);
+    }
+
+    /**
+     * @return the number of leading events that are committed and can be read
+     */
+    private long readable(Chunk[] current) {
+        long size = Math.min(size(), (long) current.length * CHUNK_RECORDS);
+        for (long i = 0; i < size; i++) {
+            if (current[(int) (i >>> CHUNK_BITS)].committed.get((int) (i & (CHUNK_RECORDS - 1))) == 0) {
+                return i;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Visits each event in the order recorded.
+     * @param visitor the visitor
+     */
+    public void forEach(Consumer<Event> visitor) {
+        Chunk[] current = chunks;
+        long size = readable(current);
+        for (long i = 0; i < size; i++) {
+            visitor.accept(new Event(current, i));
+        }
+    }
+
+    public long count(Kind kind) {
+        int ordinal = kind.ordinal();
+        Chunk[] current = chunks;
+        long size = readable(current);
+        long count = 0;
+        for (long i = 0; i < size; i++) {
+            if (current[(int) (i >>> CHUNK_BITS)].records.getInt((int) (i & (CHUNK_RECORDS - 1)) * RECORD + KIND) == ordinal) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public long count(Predicate<Event> filter) {
+        long[] count = {0};
+        forEach(e -> {
+            if (filter.test(e)) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    public List<Event> filter(Predicate<Event> filter) {
+        List<Event> events = new ArrayList<>();
+        forEach(e -> {
+            if (filter.test(e)) {
+                events.add(e);
+            }
+        });
+        return events;
+    }
+
+    public List<Event> events(Kind kind) {
+        return filter(e -> e.kind() == kind);
+    }
+
+    /**
+     * Discards all recorded events, keeping the allocated buffers.  Must not
+     * be called while other threads are recording events.
+     */
+    public synchronized void clear() {
+        Chunk[] current = chunks;
+        long size = Math.min(size(), (long) current.length * CHUNK_RECORDS);
+        for (long i = 0; i < size; i++) {
+            current[(int) (i >>> CHUNK_BITS)].committed.set((int) (i & (CHUNK_RECORDS - 1)), 0);
+        }
+        next.set(0);
+        dropped.set(0);
+    }
+}
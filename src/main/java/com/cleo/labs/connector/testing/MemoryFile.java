@@ -0,0 +1,98 @@
+package com.cleo.labs.connector.testing;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.cleo.connector.api.interfaces.IConnectorFile;
+
+/**
+ * A file in a {@link MemoryFileStore}.
+ */
+public class MemoryFile extends TestConnectorFile {
+    private final MemoryFileStore store;
+
+    MemoryFile(MemoryFileStore store, String path) {
+        super(path);
+        this.store = store;
+    }
+
+    public MemoryFileStore store() {
+        return store;
+    }
+
+    @Override
+    public boolean exists() {
+        return isFile() || isDirectory();
+    }
+
+    @Override
+    public boolean isFile() {
+        return store.content(path) != null;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return store.isDirectory(path);
+    }
+
+    @Override
+    public long length() {
+        MemoryFileStore.Content content = store.content(path);
+        return content == null ? 0L : content.length();
+    }
+
+    @Override
+    public long lastModified() {
+        MemoryFileStore.Content content = store.content(path);
+        return content == null ? 0L : content.lastModified();
+    }
+
+    @Override
+    public boolean delete() {
+        return store.delete(path);
+    }
+
+    @Override
+    public boolean mkdir() {
+        return store.mkdir(path);
+    }
+
+    @Override
+    public boolean mkdirs() {
+        return store.mkdirs(path);
+    }
+
+    @Override
+    public boolean createNewFile() throws IOException {
+        return store.createNew(path);
+    }
+
+    @Override
+    public boolean renameTo(IConnectorFile dest) {
+        if (!(dest instanceof MemoryFile) || ((MemoryFile) dest).store != store) {
+            return false;
+        }
+        return store.rename(path, ((MemoryFile) dest).path);
+    }
+
+    @Override
+    public String[] list() {
+        return store.list(path);
+    }
+
+    @Override
+    public InputStream openInputStream() throws IOException {
+        MemoryFileStore.Content content = store.content(path);
+        if (content == null) {
+            throw new FileNotFoundException(path);
+        }
+        return new MemoryFileStore.ContentInputStream(content);
+    }
+
+    @Override
+    public OutputStream openOutputStream(boolean append) throws IOException {
+        return new MemoryFileStore.ContentOutputStream(store.create(path, !append), append);
+    }
+}
@@ -0,0 +1,408 @@
+package com.cleo.labs.connector.testing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory file system backing the files returned by
+ * {@link TestConnector#newFile(String)}.  File content is kept in chunked
+ * {@code ByteBuffer}s, off heap by default so that large files do not
+ * pressure the garbage collector.
+ * <p>
+ * Any number of streams may read and write a file concurrently: each read
+ * or write call is atomic with respect to the others, and readers see the
+ * content written so far.
+ */
+public class MemoryFileStore {
+
+    static final int CHUNK_BITS = 16;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    /**
+     * The content of one file.
+     */
+    static class Content {
+        private final boolean offHeap;
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final List<ByteBuffer> chunks = new ArrayList<>();
+        private long length = 0;
+        private volatile long lastModified = System.currentTimeMillis();
+
+        Content(boolean offHeap) {
+            this.offHeap = offHeap;
+        }
+
+        long length() {
+            lock.readLock().lock();
+            try {
+                return length;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        long lastModified() {
+            return lastModified;
+        }
+
+        long footprint() {
+            lock.readLock().lock();
+            try {
+                return (long) chunks.size() * CHUNK_SIZE;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        void truncate() {
+            lock.writeLock().lock();
+            try {
+                chunks.clear();
+                length = 0;
+                lastModified = System.currentTimeMillis();
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Reads up to {@code len} bytes at {@code position}.
+         * @return the number of bytes read, or -1 at the end of the content
+         */
+        int read(long position, byte[] b, int off, int len) {
+            lock.readLock().lock();
+            try {
+                if (position >= length) {
+                    return -1;
+                }
+                int n = (int) Math.min(len, length - position);
+                int done = 0;
+                while (done < n) {
+                    long p = position + done;
+                    ByteBuffer chunk = chunks.get((int) (p >>> CHUNK_BITS)).duplicate();
+                    int offset = (int) (p & (CHUNK_SIZE - 1));
+                    int count = Math.min(n - done, CHUNK_SIZE - offset);
+                    chunk.position(offset);
+                    chunk.get(b, off + done, count);
+                    done += count;
+                }
+                return n;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Writes {@code len} bytes at {@code position}, or at the end if
+         * {@code position} is negative.
+         * @return the position after the write
+         */
+        long write(long position, byte[] b, int off, int len) {
+            lock.writeLock().lock();
+            try {
+                if (position < 0) {
+                    position = length;
+                }
+                long end = position + len;
+                while ((long) chunks.size() * CHUNK_SIZE < end) {
+                    chunks.add(offHeap ? ByteBuffer.allocateDirect(CHUNK_SIZE) : ByteBuffer.allocate(CHUNK_SIZE));
+                }
+                int done = 0;
+                while (done < len) {
+                    long p = position + done;
+                    ByteBuffer chunk = chunks.get((int) (p >>> CHUNK_BITS)).duplicate();
+                    int offset = (int) (p & (CHUNK_SIZE - 1));
+                    int count = Math.min(len - done, CHUNK_SIZE - offset);
+                    chunk.position(offset);
+                    chunk.put(b, off + done, count);
+                    done += count;
+                }
+                length = Math.max(length, end);
+                lastModified = System.currentTimeMillis();
+                return end;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    private final boolean offHeap;
+    private final ConcurrentMap<String, Content> files = new ConcurrentHashMap<>();
+    private final Set<String> directories = ConcurrentHashMap.newKeySet();
+    private final AtomicLong temp = new AtomicLong();
+
+    /**
+     * Creates a store.
+     * @param offHeap {@code true} to keep content in direct buffers
+     */
+    public MemoryFileStore(boolean offHeap) {
+        this.offHeap = offHeap;
+        directories.add("");
+    }
+
+    /**
+     * Creates an off-heap store.
+     */
+    public MemoryFileStore() {
+        this(true);
+    }
+
+    /**
+     * Returns a handle on a path in the store (which need not exist yet).
+     * @param path the path, relative to the root of the store
+     * @return the file
+     */
+    public MemoryFile file(String path) {
+        return new MemoryFile(this, TestConnectorFile.normalize(path));
+    }
+
+    /**
+     * @return a handle on a new, unique path under {@code tmp}
+     */
+    public MemoryFile tempFile() {
+        directories.add("tmp");
+        return file("tmp/file-" + temp.incrementAndGet());
+    }
+
+    /**
+     * @return the number of files in the store
+     */
+    public int size() {
+        return files.size();
+    }
+
+    /**
+     * @return the memory allocated to file content, in bytes
+     */
+    public long footprint() {
+        return files.values().stream().mapToLong(Content::footprint).sum();
+    }
+
+    /**
+     * Removes all files and directories.
+     */
+    public void clear() {
+        files.clear();
+        directories.clear();
+        directories.add("");
+    }
+
+    Content content(String path) {
+        return files.get(path);
+    }
+
+    boolean isDirectory(String path) {
+        return directories.contains(path);
+    }
+
+    private boolean parentExists(String path) {
+        int slash = path.lastIndexOf('/');
+        return directories.contains(slash < 0 ? "" : path.substring(0, slash));
+    }
+
+    Content create(String path, boolean truncate) throws IOException {
+        if (directories.contains(path)) {
+            throw new IOException(path + " is a directory");
+        }
+        if (!parentExists(path)) {
+            throw new IOException("parent directory of " + path + " does not exist");
+        }
+        Content content = files.computeIfAbsent(path, p -> new Content(offHeap));
+        if (truncate) {
+            content.truncate();
+        }
+        return content;
+    }
+
+    boolean createNew(String path) {
+        if (directories.contains(path) || !parentExists(path)) {
+            return false;
+        }
+        return files.putIfAbsent(path, new Content(offHeap)) == null;
+    }
+
+    boolean mkdir(String path) {
+        if (path.isEmpty() || files.containsKey(path) || !parentExists(path)) {
+            return false;
+        }
+        return directories.add(path);
+    }
+
+    boolean mkdirs(String path) {
+        if (directories.contains(path)) {
+            return false;
+        }
+        int slash = path.lastIndexOf('/');
+        if (slash > 0) {
+            mkdirs(path.substring(0, slash));
+        }
+        return mkdir(path);
+    }
+
+    boolean delete(String path) {
+        if (files.remove(path) != null) {
+            return true;
+        }
+        if (path.isEmpty() || list(path).length > 0) {
+            return false;
+        }
+        return directories.remove(path);
+    }
+
+    /**
+     * Renames a file, or a directory with everything under it.  A file is
+     * renamed atomically; a directory's entries are moved one by one, so
+     * files created in it while it is being renamed may be left behind.
+     */
+    boolean rename(String from, String to) {
+        if (directories.contains(to) || !parentExists(to)) {
+            return false;
+        }
+        Content content = files.remove(from);
+        if (content == null) {
+            return renameDirectory(from, to);
+        }
+        if (files.putIfAbsent(to, content) != null) {
+            files.putIfAbsent(from, content);
+            return false;
+        }
+        return true;
+    }
+
+    private synchronized boolean renameDirectory(String from, String to) {
+        if (from.isEmpty() || !directories.contains(from) || files.containsKey(to) || directories.contains(to)
+                || to.startsWith(from + "/")) {
+            return false;
+        }
+        String prefix = from + "/";
+        directories.add(to);
+        for (String d : new ArrayList<>(directories)) {
+            if (d.startsWith(prefix)) {
+                directories.add(to + d.substring(from.length()));
+                directories.remove(d);
+            }
+        }
+        for (String f : new ArrayList<>(files.keySet())) {
+            if (f.startsWith(prefix)) {
+                Content moved = files.remove(f);
+                if (moved != null) {
+                    files.put(to + f.substring(from.length()), moved);
+                }
+            }
+        }
+        directories.remove(from);
+        return true;
+    }
+
+    String[] list(String path) {
+        if (!directories.contains(path)) {
+            return null;
+        }
+        String prefix = path.isEmpty() ? "" : path + "/";
+        Set<String> names = new TreeSet<>();
+        for (String p : files.keySet()) {
+            if (p.startsWith(prefix) && p.indexOf('/', prefix.length()) < 0) {
+                names.add(p.substring(prefix.length()));
+            }
+        }
+        for (String p : directories) {
+            if (!p.isEmpty() && p.startsWith(prefix) && p.indexOf('/', prefix.length()) < 0) {
+                names.add(p.substring(prefix.length()));
+            }
+        }
+        return names.toArray(new String[names.size()]);
+    }
+
+    static class ContentInputStream extends InputStream {
+        private final Content content;
+        private long position = 0;
+        private long mark = 0;
+        private final byte[] one = new byte[1];
+
+        ContentInputStream(Content content) {
+            this.content = content;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            int n = content.read(position, b, off, len);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = Math.max(0, Math.min(n, content.length() - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0, content.length() - position));
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            mark = position;
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            position = mark;
+        }
+    }
+
+    static class ContentOutputStream extends OutputStream {
+        private final Content content;
+        private final boolean append;
+        private long position = 0;
+        private final byte[] one = new byte[1];
+
+        ContentOutputStream(Content content, boolean append) {
+            this.content = content;
+            this.append = append;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            one[0] = (byte) b;
+            write(one, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (append) {
+                content.write(-1, b, off, len);
+            } else {
+                position = content.write(position, b, off, len);
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.cleo.labs.connector.testing;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * The shaping state for one emulated connection, as described by a
+ * {@link NetworkProfile}, and the stream wrappers that apply it.
+ */
+class NetworkLink {
+
+    /**
+     * A token bucket that may go into debt: a caller takes what it needs
+     * and then sleeps until the bucket would have refilled, so large
+     * transfers are paced smoothly at the configured rate.
+     */
+    static class TokenBucket {
+        private final long rate;
+        private final long burst;
+        private final LongSupplier clock;
+        private double tokens;
+        private long refilled;
+
+        public TokenBucket(long rate, long burst) {
+            this(rate, burst, System::nanoTime);
+        }
+
+        /**
+         * @param rate the refill rate, in tokens per second
+         * @param burst the capacity of the bucket
+         * @param clock the source of {@code System.nanoTime()}-like readings
+         */
+        TokenBucket(long rate, long burst, LongSupplier clock) {
+            this.rate = rate;
+            this.burst = burst;
+            this.clock = clock;
+            this.tokens = burst;
+            this.refilled = clock.getAsLong();
+        }
+
+        /**
+         * Takes {@code n} tokens.  The refill is computed in floating point
+         * seconds, so a long idle period (including the time before the
+         * first transfer) simply fills the bucket instead of overflowing.
+         * @param n the number of bytes to send
+         * @return the nanoseconds the caller must wait before sending
+         */
+        public synchronized long take(long n) {
+            long now = clock.getAsLong();
+            double elapsed = Math.max(0, now - refilled) / 1e9;
+            tokens = Math.min(burst, tokens + elapsed * rate);
+            refilled = now;
+            tokens -= n;
+            return tokens >= 0 ? 0 : (long) Math.min(Long.MAX_VALUE, -tokens / rate * 1e9);
+        }
+    }
+
+    private final NetworkProfile profile;
+    private final TokenBucket up;
+    private final TokenBucket down;
+    private final Random random;
+    private volatile boolean writing = true;
+
+    public NetworkLink(NetworkProfile profile) {
+        this.profile = profile;
+        this.up = profile.upstream() > 0 ? new TokenBucket(profile.upstream(), profile.burstFor(profile.upstream())) : null;
+        this.down = profile.downstream() > 0 ? new TokenBucket(profile.downstream(), profile.burstFor(profile.downstream())) : null;
+        this.random = new Random(profile.seed());
+    }
+
+    private static void sleep(long nanos) throws IOException {
+        if (nanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(nanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+    }
+
+    /**
+     * @return a one-way latency sample
+     */
+    long latency() {
+        long latency = profile.latencyNanos();
+        long jitter = profile.jitterNanos();
+        if (jitter > 0) {
+            double r;
+            synchronized (random) {
+                r = profile.distribution() == NetworkProfile.Jitter.NORMAL
+                        ? random.nextGaussian()
+                        : random.nextDouble() * 2 - 1;
+            }
+            latency += (long) (r * jitter);
+        }
+        return Math.max(0, latency);
+    }
+
+    /**
+     * Charges the latency and bandwidth for a chunk.
+     * @param bucket the bucket for the direction, or {@code null}
+     * @param n the chunk size
+     * @param read {@code true} for a read, {@code false} for a write
+     */
+    private void charge(TokenBucket bucket, long n, boolean read) throws IOException {
+        long delay = 0;
+        if (profile.perTurnaround()) {
+            if (read && writing) {
+                delay = latency() + latency();
+            }
+        } else {
+            delay = latency();
+        }
+        writing = !read;
+        if (bucket != null && n > 0) {
+            delay += bucket.take(n);
+        }
+        sleep(delay);
+    }
+
+    /**
+     * Simulates connection setup: a round trip.
+     */
+    void connect() throws IOException {
+        sleep(latency() + latency());
+    }
+
+    class ShapedInputStream extends FilterInputStream {
+        public ShapedInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                charge(down, 1, true);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                charge(down, n, true);
+            }
+            return n;
+        }
+    }
+
+    class ShapedOutputStream extends FilterOutputStream {
+        public ShapedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            charge(up, 1, false);
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            charge(up, len, false);
+            out.write(b, off, len);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.cleo.labs.connector.testing;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Describes the network link emulated by {@link TestConnectorConnection}:
+ * bandwidth in each direction, and latency with optional jitter.
+ * <pre>
+ * NetworkProfile partner = new NetworkProfile()
+ *     .bandwidth(NetworkProfile.mbps(100))
+ *     .latency(50, TimeUnit.MILLISECONDS)
+ *     .jitter(5, TimeUnit.MILLISECONDS, NetworkProfile.Jitter.NORMAL);
+ * </pre>
+ * Bandwidth is enforced by a token bucket per direction, shared by all
+ * streams of the connection.  Latency is charged per chunk: by default each
+ * read or write call is delayed, so connectors making many small calls pay
+ * it many times; with {@link #perTurnaround(boolean)} it is charged as a
+ * round trip only when the connection turns around from writing to reading,
+ * which models request/response protocols over a streaming transport.
+ */
+public class NetworkProfile {
+
+    public enum Jitter {
+        /**
+         * latency varies uniformly within &plusmn;jitter
+         */
+        UNIFORM,
+        /**
+         * latency is normally distributed with standard deviation jitter
+         */
+        NORMAL;
+    }
+
+    private long upstream = 0;
+    private long downstream = 0;
+    private long burst = 0;
+    private long latencyNanos = 0;
+    private long jitterNanos = 0;
+    private Jitter distribution = Jitter.UNIFORM;
+    private boolean perTurnaround = false;
+    private long seed = System.nanoTime();
+
+    /**
+     * @param megabits a bandwidth in megabits per second
+     * @return the bandwidth in bytes per second
+     */
+    public static long mbps(double megabits) {
+        return (long) (megabits * 1_000_000 / 8);
+    }
+
+    /**
+     * Sets the bandwidth in both directions.
+     * @param bytesPerSecond the bandwidth, or 0 for unlimited (the default)
+     * @return {@code this}
+     */
+    public NetworkProfile bandwidth(long bytesPerSecond) {
+        this.upstream = bytesPerSecond;
+        this.downstream = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Sets the bandwidth for data written by the connector.
+     * @param bytesPerSecond the bandwidth, or 0 for unlimited
+     * @return {@code this}
+     */
+    public NetworkProfile upstream(long bytesPerSecond) {
+        this.upstream = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Sets the bandwidth for data read by the connector.
+     * @param bytesPerSecond the bandwidth, or 0 for unlimited
+     * @return {@code this}
+     */
+    public NetworkProfile downstream(long bytesPerSecond) {
+        this.downstream = bytesPerSecond;
+        return this;
+    }
+
+    /**
+     * Sets the token bucket depth, i.e. how many bytes may pass at full speed
+     * after the link has been idle (by default 1/20 second's worth).
+     * @param bytes the burst size
+     * @return {@code this}
+     */
+    public NetworkProfile burst(long bytes) {
+        this.burst = bytes;
+        return this;
+    }
+
+    /**
+     * Sets the one-way latency.
+     * @param latency the latency
+     * @param unit the units of {@code latency}
+     * @return {@code this}
+     */
+    public NetworkProfile latency(long latency, TimeUnit unit) {
+        this.latencyNanos = unit.toNanos(latency);
+        return this;
+    }
+
+    /**
+     * Sets the latency jitter.
+     * @param jitter the jitter
+     * @param unit the units of {@code jitter}
+     * @param distribution how latency varies
+     * @return {@code this}
+     */
+    public NetworkProfile jitter(long jitter, TimeUnit unit, Jitter distribution) {
+        this.jitterNanos = unit.toNanos(jitter);
+        this.distribution = distribution;
+        return this;
+    }
+
+    /**
+     * Charges latency as a round trip each time the connection turns around
+     * from writing to reading, instead of on every read and write call.
+     * @param perTurnaround {@code true} to charge latency per turnaround
+     * @return {@code this}
+     */
+    public NetworkProfile perTurnaround(boolean perTurnaround) {
+        this.perTurnaround = perTurnaround;
+        return this;
+    }
+
+    /**
+     * Seeds the jitter, for reproducible runs.
+     * @param seed the seed
+     * @return {@code this}
+     */
+    public NetworkProfile seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public long upstream() {
+        return upstream;
+    }
+
+    public long downstream() {
+        return downstream;
+    }
+
+    long burstFor(long bytesPerSecond) {
+        return burst > 0 ? burst : Math.max(1, bytesPerSecond / 20);
+    }
+
+    public long latencyNanos() {
+        return latencyNanos;
+    }
+
+    public long jitterNanos() {
+        return jitterNanos;
+    }
+
+    public Jitter distribution() {
+        return distribution;
+    }
+
+    public boolean perTurnaround() {
+        return perTurnaround;
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    /**
+     * @return {@code true} if this profile actually shapes traffic
+     */
+    public boolean isShaped() {
+        return upstream > 0 || downstream > 0 || latencyNanos > 0 || jitterNanos > 0;
+    }
+}
@@ -0,0 +1,186 @@
+package com.cleo.labs.connector.testing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A bounded, least-recently-used cache of compiled patterns for
+ * {@link TestConnectorAction#match(String, String)}.  A pattern may be
+ * prefixed with {@code glob:} or {@code regex:} to choose its syntax;
+ * unprefixed patterns use the default syntax of the cache.
+ * <p>
+ * Filtering a listing typically matches one pattern against many names, so
+ * the most recently used pattern is also kept where it can be checked
+ * without taking the cache lock.
+ */
+public class PatternCache {
+    public static final String GLOB = "glob:";
+    public static final String REGEX = "regex:";
+
+    private static class Compiled {
+        private final String key;
+        private final Pattern pattern;
+
+        private Compiled(String key, Pattern pattern) {
+            this.key = key;
+            this.pattern = pattern;
+        }
+    }
+
+    private final int capacity;
+    private final boolean glob;
+    private final Map<String, Pattern> cache;
+    private volatile Compiled last = null;
+
+    /**
+     * Creates a cache.
+     * @param capacity the maximum number of patterns to keep
+     * @param glob {@code true} if unprefixed patterns are globs, {@code false} for regular expressions
+     */
+    public PatternCache(int capacity, boolean glob) {
+        this.capacity = capacity;
+        this.glob = glob;
+        this.cache = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+                return size() > PatternCache.this.capacity;
+            }
+        };
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean glob() {
+        return glob;
+    }
+
+    /**
+     * Returns the compiled form of a pattern, compiling it if needed.
+     * @param pattern the pattern, optionally prefixed with {@code glob:} or {@code regex:}
+     * @return the compiled pattern
+     */
+    public Pattern compile(String pattern) {
+        Compiled compiled = last;
+        if (compiled != null && compiled.key.equals(pattern)) {
+            return compiled.pattern;
+        }
+        Pattern result;
+        synchronized (cache) {
+            result = cache.get(pattern);
+            if (result == null) {
+                result = Pattern.compile(toRegex(pattern, glob));
+                cache.put(pattern, result);
+            }
+        }
+        last = new Compiled(pattern, result);
+        return result;
+    }
+
+    public boolean matches(String pattern, String name) {
+        return compile(pattern).matcher(name).matches();
+    }
+
+    /**
+     * @return the number of patterns cached
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+        last = null;
+    }
+
+    static String toRegex(String pattern, boolean glob) {
+        if (pattern.startsWith(GLOB)) {
+            return globToRegex(pattern.substring(GLOB.length()));
+        } else if (pattern.startsWith(REGEX)) {
+            return pattern.substring(REGEX.length());
+        }
+        return glob ? globToRegex(pattern) : pattern;
+    }
+
+    /**
+     * Converts a glob to a regular expression: {@code *} matches any run of
+     * characters other than {@code /}, {@code **} any run of characters,
+     * {@code ?} a single character, {@code [...]} a character class and
+     * {@code {a,b}} either alternative.
+     * @param glob the glob
+     * @return the equivalent regular expression
+     */
+    static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 16);
+        boolean inGroup = false;
+        boolean inClass = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (inClass) {
+                if (c == ']') {
+                    inClass = false;
+                } else if (c == '\\' || c == '[' || c == '&') {
+                    regex.append('\\');
+                }
+                regex.append(c);
+                continue;
+            }
+            switch (c) {
+            case '*':
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                    regex.append(".*");
+                    i++;
+                } else {
+                    regex.append("[^/]*");
+                }
+                break;
+            case '?':
+                regex.append("[^/]");
+                break;
+            case '[':
+                inClass = true;
+                regex.append('[');
+                if (i + 1 < glob.length() && glob.charAt(i + 1) == '!') {
+                    regex.append('^');
+                    i++;
+                }
+                break;
+            case '{':
+                inGroup = true;
+                regex.append("(?:");
+                break;
+            case '}':
+                if (inGroup) {
+                    inGroup = false;
+                    regex.append(')');
+                } else {
+                    regex.append("\\}");
+                }
+                break;
+            case ',':
+                regex.append(inGroup ? "|" : ",");
+                break;
+            case '\\':
+                if (i + 1 < glob.length()) {
+                    regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                } else {
+                    regex.append("\\\\");
+                }
+                break;
+            default:
+                if ("().+^$|".indexOf(c) >= 0) {
+                    regex.append('\\');
+                }
+                regex.append(c);
+            }
+        }
+        return regex.toString();
+    }
+}
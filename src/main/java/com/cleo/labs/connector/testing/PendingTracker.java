@@ -0,0 +1,143 @@
+package com.cleo.labs.connector.testing;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The host's pending-transfer cache, as maintained by the connector through
+ * {@code addToPendingCache} and {@code removeFromPendingCache}, with metrics:
+ * the current and peak number of transfers in flight, how long transfers
+ * stay pending, and the transfers that were never removed.
+ * <p>
+ * Any number of threads may add and remove transfers concurrently.
+ */
+public class PendingTracker {
+
+    private final ConcurrentHashMap<String, Long> pending = new ConcurrentHashMap<>();
+    private final AtomicLong current = new AtomicLong();
+    private final AtomicLong peak = new AtomicLong();
+    private final LongAdder added = new LongAdder();
+    private final LongAdder removed = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder unknown = new LongAdder();
+    private final LatencyHistogram time = new LatencyHistogram();
+
+    public void add(String transferID) {
+        if (pending.putIfAbsent(transferID, System.nanoTime()) == null) {
+            added.increment();
+            long now = current.incrementAndGet();
+            peak.accumulateAndGet(now, Math::max);
+        } else {
+            duplicates.increment();
+        }
+    }
+
+    public void remove(String transferID) {
+        Long entered = pending.remove(transferID);
+        if (entered != null) {
+            time.recordSince(entered);
+            removed.increment();
+            current.decrementAndGet();
+        } else {
+            unknown.increment();
+        }
+    }
+
+    /**
+     * @return the number of transfers pending now
+     */
+    public long size() {
+        return current.get();
+    }
+
+    /**
+     * @return the largest number of transfers pending at once
+     */
+    public long peak() {
+        return peak.get();
+    }
+
+    public long added() {
+        return added.sum();
+    }
+
+    public long removed() {
+        return removed.sum();
+    }
+
+    /**
+     * @return the number of adds of a transfer ID that was already pending
+     */
+    public long duplicates() {
+        return duplicates.sum();
+    }
+
+    /**
+     * @return the number of removes of a transfer ID that was not pending
+     */
+    public long unknown() {
+        return unknown.sum();
+    }
+
+    /**
+     * @return the time transfers spent pending, from add to remove
+     */
+    public LatencyHistogram time() {
+        return time;
+    }
+
+    /**
+     * @return the IDs of the transfers pending now
+     */
+    public Set<String> pending() {
+        return Collections.unmodifiableSet(pending.keySet());
+    }
+
+    /**
+     * Returns the transfers that have been pending for at least {@code nanos},
+     * which once a run is over are the transfers the connector leaked.
+     * @param nanos the minimum age
+     * @return the transfer IDs and their ages in nanoseconds, in ID order
+     */
+    public Map<String, Long> leaked(long nanos) {
+        long now = System.nanoTime();
+        Map<String, Long> leaked = new TreeMap<>();
+        pending.forEach((id, entered) -> {
+            if (now - entered >= nanos) {
+                leaked.put(id, now - entered);
+            }
+        });
+        return leaked;
+    }
+
+    /**
+     * @return the transfers pending now, and their ages in nanoseconds
+     */
+    public Map<String, Long> leaked() {
+        return leaked(0);
+    }
+
+    /**
+     * Resets the metrics, keeping the transfers pending now (so that
+     * current and peak stay accurate).
+     */
+    public void reset() {
+        peak.set(current.get());
+        added.reset();
+        removed.reset();
+        duplicates.reset();
+        unknown.reset();
+        time.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d pending (peak %d), %d added, %d removed, %d duplicate, %d unknown, time %s",
+                size(), peak(), added(), removed(), duplicates(), unknown(), time);
+    }
+}
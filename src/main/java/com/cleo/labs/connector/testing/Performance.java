@@ -0,0 +1,50 @@
+package com.cleo.labs.connector.testing;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Marks a test method (or every test method of a class) to be run
+ * repeatedly by {@link PerformanceRunner}: warmed up until its throughput
+ * is steady, then measured over a number of iterations, each of which runs
+ * the body repeatedly on {@link #threads()} threads for {@link #duration()}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.TYPE})
+public @interface Performance {
+    /**
+     * @return the minimum number of warmup iterations, which are discarded
+     */
+    int warmup() default 5;
+
+    /**
+     * @return the maximum number of warmup iterations spent waiting for a steady state
+     */
+    int maxWarmup() default 50;
+
+    /**
+     * @return the number of measured iterations
+     */
+    int iterations() default 10;
+
+    /**
+     * @return the number of threads running the body at once
+     */
+    int threads() default 1;
+
+    /**
+     * @return the length of each iteration, or 0 to run the body once per thread per iteration
+     */
+    long duration() default 1;
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    /**
+     * @return the coefficient of variation of the throughput of the last
+     * three warmup iterations below which the test is considered steady
+     */
+    double steadyState() default 0.05;
+}
@@ -0,0 +1,431 @@
+package com.cleo.labs.connector.testing;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.rules.TestRule;
+import org.junit.runner.Description;
+import org.junit.runners.model.Statement;
+
+/**
+ * A JUnit 4 rule that compares the metrics a test records (throughput,
+ * latency percentiles, allocation per operation) with a baseline file kept
+ * in the project, failing the test with a table of the differences when a
+ * metric is worse than the baseline by more than its tolerance:
+ * <pre>
+ * &#64;Rule
+ * public PerformanceBaseline baseline = new PerformanceBaseline(Paths.get("src/test/resources/performance.json"))
+ *     .tolerance(0.10)
+ *     .tolerance("latency.p99", 0.25);
+ *
+ * &#64;Test
+ * public void load() throws Exception {
+ *     LoadDriver.Report report = ...;
+ *     baseline.throughput(report.throughput());
+ *     baseline.latency("latency", report.stats("PUT").latency());
+ * }
+ * </pre>
+ * Metrics are stored under {@code ClassName#method}.  Metrics missing from
+ * the baseline are added to it, and running with
+ * {@code -Dperformance.baseline.update=true} rewrites the baseline with the
+ * current figures, e.g. after an accepted change in performance.  The file
+ * is sorted JSON, to diff cleanly under version control:
+ * <pre>
+ * {
+ *   "version": 1,
+ *   "tests": {
+ *     "com.example.MyConnectorTest#load": {
+ *       "latency.p50": 812345.0,
+ *       "throughput": 1523.4
+ *     }
+ *   }
+ * }
+ * </pre>
+ */
+public class PerformanceBaseline implements TestRule {
+
+    /**
+     * The version of the baseline file format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The system property that, when {@code true}, rewrites the baseline with the current figures.
+     */
+    public static final String UPDATE_PROPERTY = "performance.baseline.update";
+
+    private static class Metric {
+        private final double value;
+        private final boolean higherIsBetter;
+        private Metric(double value, boolean higherIsBetter) {
+            this.value = value;
+            this.higherIsBetter = higherIsBetter;
+        }
+    }
+
+    private final Path file;
+    private double tolerance = 0.10;
+    private Map<String, Double> tolerances = new HashMap<>();
+    private boolean update = Boolean.getBoolean(UPDATE_PROPERTY);
+    private Map<String, Metric> metrics = new LinkedHashMap<>();
+
+    /**
+     * @param file the baseline file, created on first use
+     */
+    public PerformanceBaseline(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Sets the default tolerance: the fraction by which a metric may be worse
+     * than the baseline before the test fails.
+     * @param tolerance the tolerance, e.g. 0.10 for 10% (the default)
+     * @return {@code this}
+     */
+    public PerformanceBaseline tolerance(double tolerance) {
+        this.tolerance = tolerance;
+        return this;
+    }
+
+    /**
+     * Sets the tolerance of a metric, e.g. a looser one for a noisy tail latency.
+     * @param metric the metric name
+     * @param tolerance the tolerance
+     * @return {@code this}
+     */
+    public PerformanceBaseline tolerance(String metric, double tolerance) {
+        this.tolerances.put(metric, tolerance);
+        return this;
+    }
+
+    /**
+     * @param update {@code true} to rewrite the baseline rather than compare with it
+     * @return {@code this}
+     */
+    public PerformanceBaseline update(boolean update) {
+        this.update = update;
+        return this;
+    }
+
+    /**
+     * Records a metric of the current test.
+     * @param metric the metric name
+     * @param value the value
+     * @param higherIsBetter {@code true} for metrics like throughput, {@code false} for latency and allocation
+     * @return {@code this}
+     */
+    public PerformanceBaseline record(String metric, double value, boolean higherIsBetter) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException(metric + " is not a finite value: " + value);
+        }
+        metrics.put(metric, new Metric(value, higherIsBetter));
+        return this;
+    }
+
+    /**
+     * Records {@code throughput}, in operations per second.
+     * @param opsPerSecond the throughput
+     * @return {@code this}
+     */
+    public PerformanceBaseline throughput(double opsPerSecond) {
+        return record("throughput", opsPerSecond, true);
+    }
+
+    /**
+     * Records the p50, p99 and p99.9 latencies (in nanoseconds) as
+     * {@code prefix.p50}, {@code prefix.p99} and {@code prefix.p99.9}.
+     * @param prefix the metric name prefix, e.g. {@code "latency"}
+     * @param latency the latencies
+     * @return {@code this}
+     */
+    public PerformanceBaseline latency(String prefix, LatencyHistogram latency) {
+        record(prefix + ".p50", latency.percentile(50), false);
+        record(prefix + ".p99", latency.percentile(99), false);
+        return record(prefix + ".p99.9", latency.percentile(99.9), false);
+    }
+
+    /**
+     * Records the bytes allocated per call of a command as
+     * {@code allocation.COMMAND}, and per transferred byte as
+     * {@code allocation.COMMAND.perByte} if it transferred any.
+     * @param command the command, e.g. {@code "PUT"}
+     * @param account the command's account, e.g. from {@code TestConnector.of(client).accounting().account("PUT")}
+     * @return {@code this}
+     */
+    public PerformanceBaseline allocation(String command, CommandAccounting.Account account) {
+        record("allocation." + command, account.allocatedBytesPerCall(), false);
+        if (account.transferredBytes() > 0) {
+            record("allocation." + command + ".perByte", account.allocatedBytesPerByte(), false);
+        }
+        return this;
+    }
+
+    @Override
+    public Statement apply(Statement base, Description description) {
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                metrics = new LinkedHashMap<>();
+                base.evaluate();
+                if (!metrics.isEmpty()) {
+                    verify(description.getClassName() + "#" + description.getMethodName());
+                }
+            }
+        };
+    }
+
+    private double tolerance(String metric) {
+        Double t = tolerances.get(metric);
+        return t == null ? tolerance : t;
+    }
+
+    private boolean regressed(String metric, Metric current, double baseline) {
+        double limit = tolerance(metric) * Math.abs(baseline);
+        return current.higherIsBetter ? current.value < baseline - limit : current.value > baseline + limit;
+    }
+
+    /**
+     * Compares the metrics recorded with the baseline and adds any new ones to it.
+     * @param test the test key
+     * @throws IOException if the baseline can not be read or written
+     * @throws AssertionError if a metric regressed
+     */
+    private void verify(String test) throws IOException {
+        synchronized (PerformanceBaseline.class) {
+            Map<String, Map<String, Double>> tests = read(file);
+            Map<String, Double> baseline = tests.computeIfAbsent(test, k -> new TreeMap<>());
+            boolean changed = false;
+            boolean failed = false;
+            StringBuilder diff = new StringBuilder();
+            diff.append(String.format("performance regression in %s (baseline %s):%n", test, file));
+            diff.append(String.format("  %-24s %16s %16s %9s %9s%n", "metric", "baseline", "current", "change", "tolerance"));
+            for (Map.Entry<String, Metric> e : metrics.entrySet()) {
+                String metric = e.getKey();
+                Metric current = e.getValue();
+                Double previous = baseline.get(metric);
+                if (previous == null || update) {
+                    baseline.put(metric, current.value);
+                    changed = true;
+                }
+                if (previous == null) {
+                    diff.append(String.format("  %-24s %16s %16.1f %9s %9s%n", metric, "-", current.value, "new", ""));
+                    continue;
+                }
+                boolean regressed = !update && regressed(metric, current, previous);
+                failed |= regressed;
+                diff.append(String.format("  %-24s %16.1f %16.1f %8s%% %8.0f%%%s%n", metric, previous, current.value,
+                        previous == 0 ? "-" : String.format("%+.1f", (current.value - previous) * 100 / previous),
+                        tolerance(metric) * 100, regressed ? "  <<" : ""));
+            }
+            if (changed) {
+                write(file, tests);
+            }
+            if (failed) {
+                throw new AssertionError(diff.toString());
+            }
+        }
+    }
+
+    /**
+     * Reads a baseline file.
+     * @param file the file
+     * @return the metrics of each test, empty if the file does not exist
+     * @throws IOException if the file can not be read or is not a baseline
+     */
+    static Map<String, Map<String, Double>> read(Path file) throws IOException {
+        Map<String, Map<String, Double>> tests = new TreeMap<>();
+        if (!Files.exists(file)) {
+            return tests;
+        }
+        Object json = new Parser(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), file).parse();
+        if (!(json instanceof Map) || !Double.valueOf(VERSION).equals(((Map<?, ?>) json).get("version"))) {
+            throw new IOException(file + " is not a version " + VERSION + " performance baseline");
+        }
+        Object all = ((Map<?, ?>) json).get("tests");
+        if (all instanceof Map) {
+            for (Map.Entry<?, ?> test : ((Map<?, ?>) all).entrySet()) {
+                Map<String, Double> metrics = new TreeMap<>();
+                if (test.getValue() instanceof Map) {
+                    for (Map.Entry<?, ?> metric : ((Map<?, ?>) test.getValue()).entrySet()) {
+                        if (metric.getValue() instanceof Double) {
+                            metrics.put((String) metric.getKey(), (Double) metric.getValue());
+                        }
+                    }
+                }
+                tests.put((String) test.getKey(), metrics);
+            }
+        }
+        return tests;
+    }
+
+    static void write(Path file, Map<String, Map<String, Double>> tests) throws IOException {
+        StringBuilder s = new StringBuilder();
+        s.append("{\n  \"version\": ").append(VERSION).append(",\n  \"tests\": {");
+        String testSeparator = "\n";
+        for (Map.Entry<String, Map<String, Double>> test : new TreeMap<>(tests).entrySet()) {
+            s.append(testSeparator).append("    ").append(quote(test.getKey())).append(": {");
+            String metricSeparator = "\n";
+            for (Map.Entry<String, Double> metric : new TreeMap<>(test.getValue()).entrySet()) {
+                s.append(metricSeparator).append("      ").append(quote(metric.getKey())).append(": ")
+                    .append(metric.getValue());
+                metricSeparator = ",\n";
+            }
+            s.append("\n    }");
+            testSeparator = ",\n";
+        }
+        s.append("\n  }\n}\n");
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        Files.write(file, s.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String quote(String s) {
+        StringBuilder q = new StringBuilder("\"");
+        for (char c : s.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                q.append('\\').append(c);
+            } else if (c < 0x20) {
+                q.append(String.format("\\u%04x", (int) c));
+            } else {
+                q.append(c);
+            }
+        }
+        return q.append('"').toString();
+    }
+
+    /**
+     * Parses the JSON subset used by baseline files: objects, strings and
+     * numbers (returned as {@code Double}s).
+     */
+    private static class Parser {
+        private final String s;
+        private final Path file;
+        private int i = 0;
+
+        private Parser(String s, Path file) {
+            this.s = s;
+            this.file = file;
+        }
+
+        private IOException error(String expected) {
+            return new IOException(String.format("%s: expected %s at offset %d", file, expected, i));
+        }
+
+        private char peek() throws IOException {
+            while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+                i++;
+            }
+            if (i >= s.length()) {
+                throw error("more input");
+            }
+            return s.charAt(i);
+        }
+
+        private void expect(char c) throws IOException {
+            if (peek() != c) {
+                throw error("'" + c + "'");
+            }
+            i++;
+        }
+
+        private Object parse() throws IOException {
+            Object value = value();
+            while (i < s.length() && Character.isWhitespace(s.charAt(i))) {
+                i++;
+            }
+            if (i < s.length()) {
+                throw error("end of input");
+            }
+            return value;
+        }
+
+        private Object value() throws IOException {
+            char c = peek();
+            if (c == '{') {
+                return object();
+            } else if (c == '"') {
+                return string();
+            } else if (c == '-' || Character.isDigit(c)) {
+                return number();
+            }
+            throw error("a value");
+        }
+
+        private Map<String, Object> object() throws IOException {
+            Map<String, Object> object = new LinkedHashMap<>();
+            expect('{');
+            if (peek() == '}') {
+                i++;
+                return object;
+            }
+            while (true) {
+                if (peek() != '"') {
+                    throw error("a name");
+                }
+                String name = string();
+                expect(':');
+                object.put(name, value());
+                if (peek() != ',') {
+                    break;
+                }
+                i++;
+            }
+            expect('}');
+            return object;
+        }
+
+        private String string() throws IOException {
+            expect('"');
+            StringBuilder string = new StringBuilder();
+            while (i < s.length() && s.charAt(i) != '"') {
+                char c = s.charAt(i++);
+                if (c == '\\' && i < s.length()) {
+                    c = s.charAt(i++);
+                    switch (c) {
+                    case 'n': c = '\n'; break;
+                    case 't': c = '\t'; break;
+                    case 'r': c = '\r'; break;
+                    case 'b': c = '\b'; break;
+                    case 'f': c = '\f'; break;
+                    case 'u':
+                        if (i + 4 > s.length()) {
+                            throw error("four hex digits");
+                        }
+                        try {
+                            c = (char) Integer.parseInt(s.substring(i, i + 4), 16);
+                        } catch (NumberFormatException e) {
+                            throw error("four hex digits");
+                        }
+                        i += 4;
+                        break;
+                    default:
+                        break;
+                    }
+                }
+                string.append(c);
+            }
+            expect('"');
+            return string.toString();
+        }
+
+        private Double number() throws IOException {
+            int start = i;
+            while (i < s.length() && "+-0123456789.eE".indexOf(s.charAt(i)) >= 0) {
+                i++;
+            }
+            try {
+                return Double.valueOf(s.substring(start, i));
+            } catch (NumberFormatException e) {
+                i = start;
+                throw error("a number");
+            }
+        }
+    }
+}
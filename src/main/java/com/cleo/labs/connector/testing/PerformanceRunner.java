@@ -0,0 +1,257 @@
+package com.cleo.labs.connector.testing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.Rule;
+import org.junit.runners.BlockJUnit4ClassRunner;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.Statement;
+
+/**
+ * A JUnit 4 runner that repeats the body of each {@link Performance}
+ * test, JMH style, without moving the test into a separate benchmark
+ * project:
+ * <pre>
+ * &#64;RunWith(PerformanceRunner.class)
+ * public class MyConnectorPerformanceTest {
+ *     private static ConnectorClient client;
+ *
+ *     &#64;BeforeClass
+ *     public static void setup() throws Exception {
+ *         client = new TestConnectorClientBuilder(MyConnectorSchema.class).build();
+ *     }
+ *
+ *     &#64;Test
+ *     &#64;Performance(warmup = 5, iterations = 10, threads = 8, duration = 1, unit = TimeUnit.SECONDS)
+ *     public void put() throws Exception {
+ *         assertTrue(Commands.put(new StringSource("f", StringSource.oneK), "f").go(client).isSuccess());
+ *     }
+ * }
+ * </pre>
+ * {@code @Before} and {@code @After} methods run once around the repeated
+ * body, which must be safe to run on several threads at once when
+ * {@code threads} is more than 1.  Warmup iterations are discarded, and
+ * continue past {@code warmup} (up to {@code maxWarmup}) until the
+ * throughput of the last three is steady.  The result of each test is
+ * printed, available from {@link #result(Class, String)}, and recorded in
+ * any {@link PerformanceBaseline} rule of the test.  A test that throws
+ * fails on the first exception.
+ */
+public class PerformanceRunner extends BlockJUnit4ClassRunner {
+
+    private static final int WINDOW = 3;
+
+    /**
+     * The statistics of the measured iterations of a test.
+     */
+    public static class Result {
+        private final int threads;
+        private int warmupIterations;
+        private boolean steady;
+        private final double[] throughputs;
+        private long operations;
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private Result(int threads, int iterations) {
+            this.threads = threads;
+            this.throughputs = new double[iterations];
+        }
+
+        /**
+         * @return the number of warmup iterations run before measuring
+         */
+        public int warmupIterations() {
+            return warmupIterations;
+        }
+        /**
+         * @return {@code false} if warmup gave up at {@code maxWarmup} without reaching a steady state
+         */
+        public boolean steady() {
+            return steady;
+        }
+        /**
+         * @return the throughput of each measured iteration, in operations per second
+         */
+        public double[] throughputs() {
+            return throughputs.clone();
+        }
+        /**
+         * @return the number of operations in the measured iterations
+         */
+        public long operations() {
+            return operations;
+        }
+        /**
+         * @return the latency of each operation in the measured iterations
+         */
+        public LatencyHistogram latency() {
+            return latency;
+        }
+        /**
+         * @return the mean throughput, in operations per second
+         */
+        public double mean() {
+            return PerformanceRunner.mean(throughputs, 0, throughputs.length);
+        }
+        public double stddev() {
+            return PerformanceRunner.stddev(throughputs, 0, throughputs.length);
+        }
+        /**
+         * @return the standard deviation of the throughput relative to its mean
+         */
+        public double cv() {
+            double mean = mean();
+            return mean == 0 ? 0.0 : stddev() / mean;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f ops/s +-%.1f%% over %d iterations on %d threads, %d warmup iterations%s, latency %s",
+                    mean(), cv() * 100, throughputs.length, threads, warmupIterations, steady ? "" : " (not steady)",
+                    latency);
+        }
+    }
+
+    private static final Map<String, Result> results = new ConcurrentHashMap<>();
+
+    public PerformanceRunner(Class<?> testClass) throws InitializationError {
+        super(testClass);
+    }
+
+    /**
+     * @param testClass the test class
+     * @param method the test method name
+     * @return the result of the last run of the test, or {@code null}
+     */
+    public static Result result(Class<?> testClass, String method) {
+        return results.get(testClass.getName() + "#" + method);
+    }
+
+    private static double mean(double[] values, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += values[i];
+        }
+        return to > from ? sum / (to - from) : 0.0;
+    }
+
+    private static double stddev(double[] values, int from, int to) {
+        if (to - from < 2) {
+            return 0.0;
+        }
+        double mean = mean(values, from, to);
+        double squares = 0;
+        for (int i = from; i < to; i++) {
+            squares += (values[i] - mean) * (values[i] - mean);
+        }
+        return Math.sqrt(squares / (to - from - 1));
+    }
+
+    private static boolean steady(double[] throughputs, int n, double threshold) {
+        if (n < WINDOW) {
+            return false;
+        }
+        double mean = mean(throughputs, n - WINDOW, n);
+        return mean > 0 && stddev(throughputs, n - WINDOW, n) / mean <= threshold;
+    }
+
+    @Override
+    protected Statement methodInvoker(FrameworkMethod method, Object test) {
+        Performance performance = method.getAnnotation(Performance.class);
+        if (performance == null) {
+            performance = getTestClass().getJavaClass().getAnnotation(Performance.class);
+        }
+        if (performance == null) {
+            return super.methodInvoker(method, test);
+        }
+        Performance p = performance;
+        return new Statement() {
+            @Override
+            public void evaluate() throws Throwable {
+                Result result = measure(p, method, test);
+                String name = getTestClass().getJavaClass().getName() + "#" + method.getName();
+                results.put(name, result);
+                System.out.println(name + ": " + result);
+                for (PerformanceBaseline baseline : getTestClass().getAnnotatedFieldValues(test, Rule.class,
+                        PerformanceBaseline.class)) {
+                    baseline.throughput(result.mean()).latency("latency", result.latency());
+                }
+            }
+        };
+    }
+
+    private static Result measure(Performance performance, FrameworkMethod method, Object test) throws Throwable {
+        int threads = Math.max(1, performance.threads());
+        long nanos = performance.unit().toNanos(performance.duration());
+        Result result = new Result(threads, performance.iterations());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            double[] warmup = new double[Math.max(performance.warmup(), performance.maxWarmup())];
+            LatencyHistogram discarded = new LatencyHistogram();
+            int n = 0;
+            while (n < performance.warmup()
+                    || (n < performance.maxWarmup() && !steady(warmup, n, performance.steadyState()))) {
+                warmup[n++] = iteration(executor, threads, nanos, method, test, discarded, new LongAdder());
+                discarded.reset();
+            }
+            result.warmupIterations = n;
+            result.steady = n == 0 || steady(warmup, n, performance.steadyState());
+            LongAdder operations = new LongAdder();
+            for (int i = 0; i < result.throughputs.length; i++) {
+                result.throughputs[i] = iteration(executor, threads, nanos, method, test, result.latency, operations);
+            }
+            result.operations = operations.sum();
+        } finally {
+            executor.shutdownNow();
+        }
+        return result;
+    }
+
+    /**
+     * Runs the body on every thread until {@code nanos} have passed (or once).
+     * @return the throughput, in operations per second
+     */
+    private static double iteration(ExecutorService executor, int threads, long nanos, FrameworkMethod method,
+            Object test, LatencyHistogram latency, LongAdder operations) throws Throwable {
+        CountDownLatch start = new CountDownLatch(1);
+        LongAdder ops = new LongAdder();
+        List<Future<Throwable>> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            workers.add(executor.submit(() -> {
+                start.await();
+                long end = System.nanoTime() + nanos;
+                try {
+                    do {
+                        long begin = System.nanoTime();
+                        method.invokeExplosively(test);
+                        latency.recordSince(begin);
+                        ops.increment();
+                    } while (System.nanoTime() < end);
+                } catch (Throwable e) {
+                    return e;
+                }
+                return null;
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Future<Throwable> worker : workers) {
+            Throwable thrown = worker.get();
+            if (thrown != null) {
+                throw thrown;
+            }
+        }
+        long elapsed = System.nanoTime() - begin;
+        operations.add(ops.sum());
+        return elapsed == 0 ? 0.0 : ops.sum() * 1e9 / elapsed;
+    }
+}
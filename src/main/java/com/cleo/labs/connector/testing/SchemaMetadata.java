@@ -0,0 +1,231 @@
+package com.cleo.labs.connector.testing;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.cleo.connector.api.ConnectorClient;
+import com.cleo.connector.api.ConnectorConfig;
+import com.cleo.connector.api.ConnectorException;
+import com.cleo.connector.api.annotations.Auth;
+import com.cleo.connector.api.annotations.Client;
+import com.cleo.connector.api.annotations.Command;
+import com.cleo.connector.api.annotations.Connector;
+import com.cleo.connector.api.annotations.Property;
+import com.cleo.connector.api.command.ConnectorCommandName;
+import com.cleo.connector.api.interfaces.IConnectorProperty;
+
+/**
+ * The reflective facts about a connector schema class that the harness
+ * needs, resolved once per class and shared by every builder and client.
+ */
+class SchemaMetadata {
+
+    private static final ConcurrentHashMap<Class<? extends ConnectorConfig>, SchemaMetadata> cache = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the (cached) metadata for a schema class.
+     * @param schemaClass the schema class
+     * @return the metadata
+     * @throws ConnectorException if the class is not a usable schema class
+     */
+    static SchemaMetadata of(Class<? extends ConnectorConfig> schemaClass) throws ConnectorException {
+        SchemaMetadata metadata = cache.get(schemaClass);
+        if (metadata == null) {
+            metadata = new SchemaMetadata(schemaClass);
+            SchemaMetadata existing = cache.putIfAbsent(schemaClass, metadata);
+            if (existing != null) {
+                metadata = existing;
+            }
+        }
+        return metadata;
+    }
+
+    static void clear() {
+        cache.clear();
+        commandCache.clear();
+    }
+
+    /**
+     * The {@code @Command} methods declared by a client class.
+     */
+    static class SupportedCommands {
+        public final Set<ConnectorCommandName> commands;
+        public final Set<String> names;
+        public SupportedCommands(Set<ConnectorCommandName> commands, Set<String> names) {
+            this.commands = commands;
+            this.names = names;
+        }
+    }
+
+    private static final ConcurrentHashMap<Class<?>, SupportedCommands> commandCache = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the (cached) set of commands supported by a client class,
+     * i.e. those with a declared {@code @Command} method.
+     * @param clientClass the client class
+     * @return the supported commands
+     */
+    static SupportedCommands commands(Class<?> clientClass) {
+        return commandCache.computeIfAbsent(clientClass, c -> {
+            Set<ConnectorCommandName> commands = EnumSet.noneOf(ConnectorCommandName.class);
+            Set<String> names = new HashSet<>();
+            for (Method method : c.getDeclaredMethods()) {
+                Command commandAnnotation = method.getAnnotation(Command.class);
+                if (commandAnnotation != null) {
+                    commands.add(commandAnnotation.name());
+                    names.add(commandAnnotation.name().getCommandName());
+                }
+            }
+            return new SupportedCommands(Collections.unmodifiableSet(commands), Collections.unmodifiableSet(names));
+        });
+    }
+
+    private final Class<? extends ConnectorConfig> schemaClass;
+    private final Client clientAnnotation;
+    private final Connector connectorAnnotation;
+    private final Auth authAnnotation;
+    private final ConnectorConfig prototype;
+    private final Map<String, Field> properties;
+    private final ConcurrentHashMap<List<Class<?>>, Constructor<? extends ConnectorClient>> constructors = new ConcurrentHashMap<>();
+
+    private SchemaMetadata(Class<? extends ConnectorConfig> schemaClass) throws ConnectorException {
+        this.schemaClass = schemaClass;
+        clientAnnotation = schemaClass.getAnnotation(Client.class);
+        if (clientAnnotation == null) {
+            throw new ConnectorException(String.format("not a ConnectorShell schema class: @Client annotation not found: %s", schemaClass.getSimpleName()));
+        }
+        connectorAnnotation = schemaClass.getAnnotation(Connector.class);
+        authAnnotation = schemaClass.getAnnotation(Auth.class);
+        try {
+            prototype = schemaClass.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new ConnectorException(e);
+        }
+        prototype.setup();
+        properties = Collections.unmodifiableMap(indexProperties(schemaClass, prototype));
+    }
+
+    /**
+     * Indexes the {@code @Property} fields of a schema class by property
+     * name, making each field accessible once up front.
+     * @param schemaClass the schema class
+     * @param schema an instance, to read the property names from
+     * @return the index
+     */
+    private static Map<String, Field> indexProperties(Class<?> schemaClass, ConnectorConfig schema) {
+        Map<String, Field> index = new LinkedHashMap<>();
+        for (Field field : schemaClass.getDeclaredFields()) {
+            Property propertyAnnotation = field.getAnnotation(Property.class);
+            if (propertyAnnotation != null) {
+                try {
+                    field.setAccessible(true);
+                    IConnectorProperty<?> property = (IConnectorProperty<?>)field.get(schema);
+                    if (property != null) {
+                        index.putIfAbsent(property.getName(), field);
+                    }
+                } catch (IllegalArgumentException | IllegalAccessException | SecurityException e) {
+                    // ignore it and keep looking
+                }
+            }
+        }
+        return index;
+    }
+
+    public Class<? extends ConnectorConfig> schemaClass() {
+        return schemaClass;
+    }
+
+    public Client clientAnnotation() {
+        return clientAnnotation;
+    }
+
+    public Class<? extends ConnectorClient> clientClass() {
+        return clientAnnotation.value();
+    }
+
+    /**
+     * @return the {@code @Connector} annotation, or {@code null}
+     */
+    public Connector connectorAnnotation() {
+        return connectorAnnotation;
+    }
+
+    /**
+     * @return the {@code @Auth} annotation, or {@code null}
+     */
+    public Auth authAnnotation() {
+        return authAnnotation;
+    }
+
+    /**
+     * Returns the schema instance, constructed and {@code setup()} once and
+     * shared by every client of this schema class, just as a single builder
+     * has always shared one schema among the clients it builds.
+     * @return the schema instance
+     */
+    public ConnectorConfig prototype() {
+        return prototype;
+    }
+
+    /**
+     * @return the (accessible) {@code @Property} fields, keyed by property name
+     */
+    public Map<String, Field> properties() {
+        return properties;
+    }
+
+    /**
+     * Finds a client constructor compatible with an argument list, caching
+     * the result by the argument classes.
+     * @param args the argument list to match
+     * @return an appropriate {@code Constructor}
+     * @throws NoSuchMethodException if no appropriate constructor can be found
+     */
+    public Constructor<? extends ConnectorClient> constructor(List<Object> args) throws NoSuchMethodException {
+        List<Class<?>> types = new ArrayList<>(args.size());
+        for (Object arg : args) {
+            types.add(arg.getClass());
+        }
+        Constructor<? extends ConnectorClient> constructor = constructors.get(types);
+        if (constructor == null) {
+            constructor = findConstructor(clientClass(), types);
+            constructors.putIfAbsent(types, constructor);
+        }
+        return constructor;
+    }
+
+    /**
+     * Finds a constructor compatiable with a list of argument types using {@code isAssignableFrom}, which
+     * is more flexible than just using {@code getDeclaredConstructor} with a list of types.
+     * @param clientClass the class to construct
+     * @param args the argument types to match
+     * @return an appropriate {@code Constructor}
+     * @throws NoSuchMethodException if no appropriate constructor can be found
+     */
+    @SuppressWarnings("unchecked")
+    private static Constructor<? extends ConnectorClient> findConstructor(Class<? extends ConnectorClient> clientClass, List<Class<?>> args) throws NoSuchMethodException {
+        constructor:
+        for (Constructor<?> constructor : clientClass.getDeclaredConstructors()) {
+            Class<?>[] types = constructor.getParameterTypes();
+            if (types.length == args.size()) {
+                for (int i = 0; i < types.length; i++) {
+                    if (!types[i].isAssignableFrom(args.get(i))) {
+                        continue constructor;
+                    }
+                }
+                return (Constructor<? extends ConnectorClient>) constructor;
+            }
+        }
+        throw new NoSuchMethodException();
+    }
+}
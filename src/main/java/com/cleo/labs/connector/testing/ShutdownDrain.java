@@ -0,0 +1,310 @@
+package com.cleo.labs.connector.testing;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntFunction;
+
+import com.cleo.connector.api.ConnectorClient;
+import com.cleo.connector.api.command.ConnectorCommandResult;
+
+/**
+ * Measures how connectors drain during a rolling restart: starts many
+ * concurrent transfers, flips the host's shutdown flag
+ * ({@code _setShuttingDown(true)}) mid-flight, and reports how long the
+ * transfers in flight took to finish, how many commands were completed and
+ * rejected, and whether the pending cache emptied.
+ * <pre>
+ * ShutdownDrain.Report report = new ShutdownDrain(client)
+ *     .transfers(1000, n -&gt; Commands.put(new GeneratedSource("f" + n, GeneratedSource.MB), "f" + n))
+ *     .concurrency(32)
+ *     .shutdownAfter(2, TimeUnit.SECONDS)
+ *     .run();
+ * </pre>
+ */
+public class ShutdownDrain {
+
+    /**
+     * The outcome of a run.  Commands are classified by when they started
+     * and finished relative to the shutdown.
+     */
+    public static class Report {
+        private long completedBefore;
+        private long inFlight;
+        private long inFlightCompleted;
+        private long inFlightUnfinished;
+        private long startedAfter;
+        private long startedAfterRejected;
+        private long drainNanos = -1;
+        private long pendingAtShutdown;
+        private long pendingAfterDrain;
+        private long pendingZeroNanos = -1;
+        private boolean timedOut;
+        private final LatencyHistogram inFlightLatency = new LatencyHistogram();
+
+        /**
+         * @return commands that finished before the shutdown
+         */
+        public long completedBefore() {
+            return completedBefore;
+        }
+        /**
+         * @return commands that started before and finished after the shutdown
+         */
+        public long inFlight() {
+            return inFlight;
+        }
+        /**
+         * @return in-flight commands that nevertheless succeeded
+         */
+        public long inFlightCompleted() {
+            return inFlightCompleted;
+        }
+        /**
+         * @return in-flight commands that were still running at the drain timeout
+         */
+        public long inFlightUnfinished() {
+            return inFlightUnfinished;
+        }
+        /**
+         * @return in-flight commands that finished without succeeding
+         */
+        public long inFlightAborted() {
+            return inFlight - inFlightCompleted - inFlightUnfinished;
+        }
+        /**
+         * @return commands started after the shutdown
+         */
+        public long startedAfter() {
+            return startedAfter;
+        }
+        /**
+         * @return commands started after the shutdown that failed or threw
+         */
+        public long rejected() {
+            return startedAfterRejected;
+        }
+        /**
+         * @return the time from the shutdown until the last in-flight command finished,
+         * or until the drain timeout if commands were still running then (see {@link #timedOut()})
+         */
+        public long drainNanos() {
+            return drainNanos;
+        }
+        /**
+         * @return the latency of the in-flight commands, from start to finish
+         */
+        public LatencyHistogram inFlightLatency() {
+            return inFlightLatency;
+        }
+        public long pendingAtShutdown() {
+            return pendingAtShutdown;
+        }
+        public long pendingAfterDrain() {
+            return pendingAfterDrain;
+        }
+        /**
+         * @return the time from the shutdown until the pending cache was empty, or -1 if it never was
+         */
+        public long pendingZeroNanos() {
+            return pendingZeroNanos;
+        }
+        /**
+         * @return {@code true} if commands were still running at the drain timeout
+         */
+        public boolean timedOut() {
+            return timedOut;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("drained in %.3fs%s: %d completed before, %d in flight (%d completed, %d aborted, "
+                    + "%d unfinished), %d started after (%d rejected), pending %d at shutdown, %d after drain%s",
+                    drainNanos / 1e9, timedOut ? " (timed out)" : "", completedBefore, inFlight, inFlightCompleted,
+                    inFlightAborted(), inFlightUnfinished, startedAfter, startedAfterRejected, pendingAtShutdown, pendingAfterDrain,
+                    pendingZeroNanos < 0 ? ", never empty" : String.format(", empty after %.3fs", pendingZeroNanos / 1e9));
+        }
+    }
+
+    private final List<ConnectorClient> clients;
+    private int count = 0;
+    private IntFunction<? extends Commands.Invocation<ConnectorCommandResult>> generator = null;
+    private int concurrency = 16;
+    private long shutdownAfterNanos = TimeUnit.SECONDS.toNanos(1);
+    private boolean continueAfterShutdown = true;
+    private long drainTimeoutNanos = TimeUnit.SECONDS.toNanos(60);
+
+    public ShutdownDrain(ConnectorClient...clients) {
+        this.clients = Arrays.asList(clients);
+    }
+
+    /**
+     * Sets the transfers to run.
+     * @param count the number of transfers
+     * @param generator called with {@code 0..count-1} to produce each transfer
+     * @return {@code this}
+     */
+    public ShutdownDrain transfers(int count, IntFunction<? extends Commands.Invocation<ConnectorCommandResult>> generator) {
+        this.count = count;
+        this.generator = generator;
+        return this;
+    }
+
+    public ShutdownDrain concurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    /**
+     * Sets when the shutdown flag is raised.
+     * @param delay the time after the first transfer starts
+     * @param unit the units of {@code delay}
+     * @return {@code this}
+     */
+    public ShutdownDrain shutdownAfter(long delay, TimeUnit unit) {
+        this.shutdownAfterNanos = unit.toNanos(delay);
+        return this;
+    }
+
+    /**
+     * Sets whether remaining transfers are still started after the shutdown
+     * (the default), to see how the connector rejects them, or abandoned.
+     * @param continueAfterShutdown {@code false} to stop starting transfers
+     * @return {@code this}
+     */
+    public ShutdownDrain continueAfterShutdown(boolean continueAfterShutdown) {
+        this.continueAfterShutdown = continueAfterShutdown;
+        return this;
+    }
+
+    public ShutdownDrain drainTimeout(long timeout, TimeUnit unit) {
+        this.drainTimeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    private long pending() {
+        long pending = 0;
+        for (ConnectorClient client : clients) {
+            pending += TestConnector.of(client).host().pending().size();
+        }
+        return pending;
+    }
+
+    private void shuttingDown(boolean shuttingDown) {
+        for (ConnectorClient client : clients) {
+            TestConnector.of(client).host()._setShuttingDown(shuttingDown);
+        }
+    }
+
+    /**
+     * Runs the scenario.  The shutdown flag is cleared again at the end.
+     * @return the report
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Report run() throws InterruptedException {
+        if (clients.isEmpty() || generator == null) {
+            throw new IllegalStateException("no clients or no transfers");
+        }
+        // workers still running after a drain timeout keep writing these
+        // while the report is built, so they are atomic: a transfer's
+        // success is set before its end time, and read after it
+        AtomicLongArray starts = new AtomicLongArray(count);
+        AtomicLongArray ends = new AtomicLongArray(count);
+        AtomicIntegerArray success = new AtomicIntegerArray(count);
+        AtomicInteger next = new AtomicInteger();
+        AtomicLong shutdownAt = new AtomicLong(Long.MAX_VALUE);
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        for (int w = 0; w < concurrency; w++) {
+            executor.execute(() -> {
+                int n;
+                while ((n = next.getAndIncrement()) < count) {
+                    if (!continueAfterShutdown && System.nanoTime() >= shutdownAt.get()) {
+                        return;
+                    }
+                    starts.set(n, System.nanoTime());
+                    try {
+                        ConnectorCommandResult result = generator.apply(n).go(clients.get(n % clients.size()));
+                        success.set(n, result != null && result.isSuccess() ? 1 : 0);
+                    } catch (Exception e) {
+                        success.set(n, 0);
+                    }
+                    ends.set(n, System.nanoTime());
+                }
+            });
+        }
+        executor.shutdown();
+        Report report = new Report();
+        try {
+            if (!executor.awaitTermination(shutdownAfterNanos, TimeUnit.NANOSECONDS)) {
+                shuttingDown(true);
+                long flipped = System.nanoTime();
+                shutdownAt.set(flipped);
+                report.pendingAtShutdown = pending();
+                long deadline = flipped + drainTimeoutNanos;
+                while (System.nanoTime() < deadline && !executor.isTerminated()) {
+                    if (report.pendingZeroNanos < 0 && pending() == 0) {
+                        report.pendingZeroNanos = System.nanoTime() - flipped;
+                    }
+                    executor.awaitTermination(1, TimeUnit.MILLISECONDS);
+                }
+                report.timedOut = !executor.isTerminated();
+                if (report.timedOut) {
+                    report.drainNanos = System.nanoTime() - flipped;
+                }
+                if (report.pendingZeroNanos < 0 && pending() == 0) {
+                    report.pendingZeroNanos = System.nanoTime() - flipped;
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+            try {
+                if (report.timedOut) {
+                    // give interruptible transfers a moment to stop before classifying
+                    executor.awaitTermination(100, TimeUnit.MILLISECONDS);
+                }
+            } finally {
+                report.pendingAfterDrain = pending();
+                shuttingDown(false);
+            }
+        }
+        long flipped = shutdownAt.get();
+        long lastInFlight = flipped;
+        for (int n = 0; n < count; n++) {
+            long start = starts.get(n);
+            if (start == 0) {
+                continue;
+            }
+            long end = ends.get(n);
+            boolean succeeded = end != 0 && success.get(n) != 0;
+            if (end != 0 && end < flipped) {
+                report.completedBefore++;
+            } else if (start < flipped) {
+                report.inFlight++;
+                if (end == 0) {
+                    report.inFlightUnfinished++;
+                } else {
+                    lastInFlight = Math.max(lastInFlight, end);
+                    report.inFlightLatency.record(end - start);
+                    if (succeeded) {
+                        report.inFlightCompleted++;
+                    }
+                }
+            } else {
+                report.startedAfter++;
+                if (!succeeded) {
+                    report.startedAfterRejected++;
+                }
+            }
+        }
+        if (!report.timedOut) {
+            report.drainNanos = flipped == Long.MAX_VALUE ? 0 : lastInFlight - flipped;
+        }
+        return report;
+    }
+}
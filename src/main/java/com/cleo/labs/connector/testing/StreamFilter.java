@@ -0,0 +1,390 @@
+package com.cleo.labs.connector.testing;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterOutputStream;
+import java.util.zip.ZipException;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherInputStream;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * A filter the host applies to transfer streams, as configured with
+ * {@link TestConnectorAction#filters(StreamFilter...)}.  A filter encodes
+ * the data a connector reads from an outgoing source (e.g. compresses it
+ * before it is sent), and decodes the data a connector writes to an incoming
+ * destination, so that a PUT and a GET of the same file round trip.
+ * <p>
+ * Each filter accumulates the CPU time spent in its own code, excluding the
+ * streams it wraps, so its cost can be separated from the connector's I/O.
+ */
+public abstract class StreamFilter {
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static final boolean cpuTime = threads.isCurrentThreadCpuTimeSupported();
+
+    private final String name;
+    private final LongAdder cpuNanos = new LongAdder();
+
+    protected StreamFilter(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return the CPU time spent in this filter, in nanoseconds (wall clock
+     * time if the JVM does not support thread CPU time)
+     */
+    public long cpuNanos() {
+        return cpuNanos.sum();
+    }
+
+    public void reset() {
+        cpuNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %.3fms", name, cpuNanos() / 1e6);
+    }
+
+    /**
+     * Encodes data read from a source.
+     * @param in the source stream
+     * @return the encoded stream
+     * @throws IOException if the filter can not be set up
+     */
+    protected abstract InputStream outgoing(InputStream in) throws IOException;
+
+    /**
+     * Decodes data written to a destination.
+     * @param out the destination stream
+     * @return the decoding stream
+     * @throws IOException if the filter can not be set up
+     */
+    protected abstract OutputStream incoming(OutputStream out) throws IOException;
+
+    static long now() {
+        return cpuTime ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * Applies the filter, metering its own CPU time: the time spent in the
+     * outer meter counts for the filter and the time spent in the inner
+     * meter counts against it.
+     */
+    InputStream wrap(InputStream in) throws IOException {
+        return new MeteredInputStream(outgoing(new MeteredInputStream(in, -1)), 1);
+    }
+
+    OutputStream wrap(OutputStream out) throws IOException {
+        return new MeteredOutputStream(incoming(new MeteredOutputStream(out, -1)), 1);
+    }
+
+    private class MeteredInputStream extends FilterInputStream {
+        private final int sign;
+
+        MeteredInputStream(InputStream in, int sign) {
+            super(in);
+            this.sign = sign;
+        }
+
+        @Override
+        public int read() throws IOException {
+            long start = now();
+            try {
+                return super.read();
+            } finally {
+                cpuNanos.add(sign * (now() - start));
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            long start = now();
+            try {
+                return super.read(b, off, len);
+            } finally {
+                cpuNanos.add(sign * (now() - start));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = now();
+            try {
+                super.close();
+            } finally {
+                cpuNanos.add(sign * (now() - start));
+            }
+        }
+    }
+
+    private class MeteredOutputStream extends FilterOutputStream {
+        private final int sign;
+
+        MeteredOutputStream(OutputStream out, int sign) {
+            super(out);
+            this.sign = sign;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long start = now();
+            try {
+                out.write(b);
+            } finally {
+                cpuNanos.add(sign * (now() - start));
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long start = now();
+            try {
+                out.write(b, off, len);
+            } finally {
+                cpuNanos.add(sign * (now() - start));
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long start = now();
+            try {
+                out.flush();
+            } finally {
+                cpuNanos.add(sign * (now() - start));
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            long start = now();
+            try {
+                super.close();
+            } finally {
+                cpuNanos.add(sign * (now() - start));
+            }
+        }
+    }
+
+    /**
+     * @return a filter that deflates outgoing data and inflates incoming data
+     */
+    public static StreamFilter deflate() {
+        return new StreamFilter("deflate") {
+            @Override
+            protected InputStream outgoing(InputStream in) {
+                Deflater deflater = new Deflater();
+                return new FilterInputStream(new DeflaterInputStream(in, deflater)) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        deflater.end();
+                    }
+                };
+            }
+            @Override
+            protected OutputStream incoming(OutputStream out) {
+                return new InflaterOutputStream(out);
+            }
+        };
+    }
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    /**
+     * @return a filter that gzips outgoing data and gunzips incoming data
+     * (with no optional header fields, as produced by {@code GZIPOutputStream})
+     */
+    public static StreamFilter gzip() {
+        return new StreamFilter("gzip") {
+            @Override
+            protected InputStream outgoing(InputStream in) {
+                CRC32 crc = new CRC32();
+                Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                InputStream body = new DeflaterInputStream(new CheckedInputStream(in, crc), deflater);
+                Enumeration<InputStream> parts = new Enumeration<InputStream>() {
+                    private int part = 0;
+                    @Override
+                    public boolean hasMoreElements() {
+                        return part < 3;
+                    }
+                    @Override
+                    public InputStream nextElement() {
+                        switch (part++) {
+                        case 0:
+                            return new ByteArrayInputStream(GZIP_HEADER);
+                        case 1:
+                            return body;
+                        case 2:
+                            // the trailer is built only once the body has been read
+                            long crc32 = crc.getValue();
+                            long size = deflater.getBytesRead();
+                            byte[] trailer = new byte[8];
+                            for (int i = 0; i < 4; i++) {
+                                trailer[i] = (byte) (crc32 >>> (8 * i));
+                                trailer[i + 4] = (byte) (size >>> (8 * i));
+                            }
+                            return new ByteArrayInputStream(trailer);
+                        default:
+                            throw new NoSuchElementException();
+                        }
+                    }
+                };
+                return new FilterInputStream(new SequenceInputStream(parts)) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        deflater.end();
+                    }
+                };
+            }
+            @Override
+            protected OutputStream incoming(OutputStream out) {
+                Inflater inflater = new Inflater(true);
+                OutputStream body = new InflaterOutputStream(out, inflater);
+                return new FilterOutputStream(body) {
+                    private final byte[] header = new byte[GZIP_HEADER.length];
+                    private int headerLength = 0;
+                    @Override
+                    public void write(int b) throws IOException {
+                        write(new byte[] {(byte) b}, 0, 1);
+                    }
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        if (headerLength < header.length) {
+                            int n = Math.min(len, header.length - headerLength);
+                            System.arraycopy(b, off, header, headerLength, n);
+                            headerLength += n;
+                            off += n;
+                            len -= n;
+                            if (headerLength == header.length
+                                    && (header[0] != GZIP_HEADER[0] || header[1] != GZIP_HEADER[1] || header[3] != 0)) {
+                                throw new ZipException("unsupported gzip header " + Arrays.toString(header));
+                            }
+                        }
+                        if (len > 0) {
+                            // the trailer is ignored: the inflater stops at the end of the deflate stream
+                            out.write(b, off, len);
+                        }
+                    }
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        inflater.end();
+                    }
+                };
+            }
+        };
+    }
+
+    private static final byte[] TEST_KEY = "connector-test-k".getBytes();
+
+    /**
+     * @param key a 16, 24 or 32 byte AES key
+     * @return a filter that encrypts outgoing data and decrypts incoming data
+     * with AES in counter mode, a stand-in for the host's encryption filters
+     */
+    public static StreamFilter aes(byte[] key) {
+        SecretKeySpec spec = new SecretKeySpec(key, "AES");
+        IvParameterSpec iv = new IvParameterSpec(new byte[16]);
+        return new StreamFilter("aes") {
+            private Cipher cipher(int mode) throws IOException {
+                try {
+                    Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+                    cipher.init(mode, spec, iv);
+                    return cipher;
+                } catch (GeneralSecurityException e) {
+                    throw new IOException(e);
+                }
+            }
+            @Override
+            protected InputStream outgoing(InputStream in) throws IOException {
+                return new CipherInputStream(in, cipher(Cipher.ENCRYPT_MODE));
+            }
+            @Override
+            protected OutputStream incoming(OutputStream out) throws IOException {
+                return new CipherOutputStream(out, cipher(Cipher.DECRYPT_MODE));
+            }
+        };
+    }
+
+    /**
+     * @return an AES filter with a fixed test key
+     */
+    public static StreamFilter aes() {
+        return aes(TEST_KEY);
+    }
+
+    /**
+     * A pass-through filter computing the CRC-32 of the data in each direction.
+     */
+    public static class Checksum extends StreamFilter {
+        private volatile CRC32 outgoing = null;
+        private volatile CRC32 incoming = null;
+
+        public Checksum() {
+            super("crc32");
+        }
+
+        /**
+         * @return the CRC-32 of the most recent outgoing stream, so far
+         */
+        public long outgoingValue() {
+            CRC32 crc = outgoing;
+            return crc == null ? 0L : crc.getValue();
+        }
+
+        /**
+         * @return the CRC-32 of the most recent incoming stream, so far
+         */
+        public long incomingValue() {
+            CRC32 crc = incoming;
+            return crc == null ? 0L : crc.getValue();
+        }
+
+        @Override
+        protected InputStream outgoing(InputStream in) {
+            CRC32 crc = new CRC32();
+            outgoing = crc;
+            return new CheckedInputStream(in, crc);
+        }
+
+        @Override
+        protected OutputStream incoming(OutputStream out) {
+            CRC32 crc = new CRC32();
+            incoming = crc;
+            return new CheckedOutputStream(out, crc);
+        }
+    }
+
+    public static Checksum checksum() {
+        return new Checksum();
+    }
+}
@@ -9,9 +9,22 @@ import com.cleo.connector.api.interfaces.IConnectorIncoming;
 import com.google.common.base.Charsets;
 
 public class StringCollector implements IConnectorIncoming {
-    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream out = new ByteArrayOutputStream() {
+        // counts the bytes written towards CommandAccounting
+        @Override
+        public synchronized void write(int b) {
+            super.write(b);
+            CommandAccounting.transferred(1);
+        }
+        @Override
+        public synchronized void write(byte[] b, int off, int len) {
+            super.write(b, off, len);
+            CommandAccounting.transferred(len);
+        }
+    };
     String transferId = null;
     String name = null;
+    volatile OutputStream stream = null; // the filtered stream for the next transfer, cleared by getStream
 
     public StringCollector name(String name) {
         this.name = name;
@@ -35,7 +48,8 @@ public class StringCollector implements IConnectorIncoming {
     }
     @Override
     public IConnectorIncoming setStream(OutputStream stream) {
-        throw new UnsupportedOperationException();
+        this.stream = stream;
+        return this;
     }
     @Override
     public boolean isFile() {
@@ -51,7 +65,9 @@ public class StringCollector implements IConnectorIncoming {
     }
     @Override
     public OutputStream getStream() {
-        return out;
+        OutputStream stream = this.stream;
+        this.stream = null;
+        return stream != null ? stream : out;
     }
     @Override
     public void setTransferId(String transferId) {
@@ -29,8 +29,35 @@ public class StringSource implements IConnectorOutgoing {
             Strings.repeat("L", 80)+"\n"+
             Strings.repeat("M", 51)+"\n";
 
+    /**
+     * Counts the bytes read towards {@link CommandAccounting}.
+     */
+    private static class CountingStream extends ByteArrayInputStream {
+        public CountingStream(byte[] buf) {
+            super(buf);
+        }
+        @Override
+        public synchronized int read() {
+            int b = super.read();
+            if (b >= 0) {
+                CommandAccounting.transferred(1);
+            }
+            return b;
+        }
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                CommandAccounting.transferred(n);
+            }
+            return n;
+        }
+    }
+
     private String path;
     private String content;
+    /** the filtered stream for the next transfer, cleared by {@code getStream} */
+    private volatile InputStream stream = null;
     public StringSource(String path, String content) {
         this.path = path;
         this.content = content;
@@ -50,7 +77,11 @@ public class StringSource implements IConnectorOutgoing {
     @Override
     public IConnectorFile getSentboxCopy() { return null; }
     @Override
-    public InputStream getStream() { return new ByteArrayInputStream(content.getBytes()); }
+    public InputStream getStream() {
+        InputStream stream = this.stream;
+        this.stream = null;
+        return stream != null ? stream : new CountingStream(content.getBytes());
+    }
     @Override
     public String getTransferId() { return "transfer-id"; }
     @Override
@@ -64,7 +95,7 @@ public class StringSource implements IConnectorOutgoing {
     @Override
     public void setMetadata(Map<String, String> arg0) { }
     @Override
-    public IConnectorOutgoing setStream(InputStream arg0) { return null; }
+    public IConnectorOutgoing setStream(InputStream stream) { this.stream = stream; return this; }
     @Override
     public void setTransferId(String arg0) { }
 }
@@ -2,6 +2,10 @@ package com.cleo.labs.connector.testing;
 
 import java.io.File;
 import java.io.PrintStream;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import com.cleo.connector.api.ConnectorClient;
 import com.cleo.connector.api.interfaces.IConnectorFile;
@@ -12,14 +16,82 @@ import com.cleo.connector.shell.interfaces.IConnectorConnection;
 import com.cleo.connector.shell.interfaces.IConnectorLogger;
 
 public class TestConnector implements IConnector {
-    private IConnectorConnection connection;
+    /*
+     * The client holds its connector, so the connector is weakly referenced
+     * here to let both be collected together.
+     */
+    private static final Map<ConnectorClient, WeakReference<TestConnector>> harnesses =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    private TestConnectorConnection connection;
     private TestConnectorAction action;
-    private IConnectorLogger logger;
+    private TestConnectorLogger logger;
+    private TestConnectorHost host;
+    private MemoryFileStore files;
+    private CommandAccounting accounting;
+    private TraceRecorder trace;
+
+    /**
+     * Returns the test harness a client was wired to by {@link TestConnectorClientBuilder},
+     * giving tests access to what the harness observed.
+     * @param client a client built by {@code TestConnectorClientBuilder}
+     * @return the harness
+     * @throws IllegalArgumentException if the client was not built by the harness
+     */
+    public static TestConnector of(ConnectorClient client) {
+        TestConnector connector = find(client);
+        if (connector == null) {
+            throw new IllegalArgumentException("client was not built by TestConnectorClientBuilder");
+        }
+        return connector;
+    }
+
+    /*
+     * The client each thread looked up last, so that the commands a worker
+     * runs against its client resolve the harness without taking the lock
+     * of the shared map.  Both are weakly referenced, as in the map.
+     */
+    private static class Binding {
+        private final WeakReference<ConnectorClient> client;
+        private final WeakReference<TestConnector> connector;
+        private Binding(ConnectorClient client, WeakReference<TestConnector> connector) {
+            this.client = new WeakReference<>(client);
+            this.connector = connector;
+        }
+    }
+
+    private static final ThreadLocal<Binding> last = new ThreadLocal<>();
+
+    static TestConnector find(ConnectorClient client) {
+        Binding binding = last.get();
+        if (binding != null && binding.client.get() == client) {
+            TestConnector connector = binding.connector.get();
+            if (connector != null) {
+                return connector;
+            }
+        }
+        WeakReference<TestConnector> ref = harnesses.get(client);
+        TestConnector connector = ref == null ? null : ref.get();
+        if (connector != null) {
+            last.set(new Binding(client, ref));
+        }
+        return connector;
+    }
+
+    static void register(ConnectorClient client, TestConnector connector) {
+        harnesses.put(client, new WeakReference<>(connector));
+    }
 
     public TestConnector(PrintStream out, ConnectorClient connectorClient) throws ConnectorPropertyException {
+        this(out, 0, connectorClient);
+    }
+
+    public TestConnector(PrintStream out, int logCapacity, ConnectorClient connectorClient) throws ConnectorPropertyException {
         this.connection = new TestConnectorConnection();
         this.action = new TestConnectorAction(this, connectorClient);
-        this.logger = new TestConnectorLogger(out);
+        this.logger = new TestConnectorLogger(out, logCapacity);
+        this.files = new MemoryFileStore();
+        this.accounting = new CommandAccounting();
     }
 
     public TestConnector set(String key, String value) {
@@ -27,6 +99,74 @@ public class TestConnector implements IConnector {
         return this;
     }
 
+    void host(TestConnectorHost host) {
+        this.host = host;
+    }
+
+    /**
+     * @return the host, once the client has been built
+     */
+    public TestConnectorHost host() {
+        return host;
+    }
+
+    /**
+     * Replaces the store backing {@link #newFile(String)}, e.g. to share one
+     * store across several clients.
+     * @param files the store
+     * @return {@code this}
+     */
+    public TestConnector files(MemoryFileStore files) {
+        this.files = files;
+        return this;
+    }
+
+    public MemoryFileStore files() {
+        return files;
+    }
+
+    /**
+     * @return the allocation and CPU time of the commands run through {@link Commands}
+     */
+    public CommandAccounting accounting() {
+        return accounting;
+    }
+
+    /**
+     * Records the commands run through {@link Commands} on this client.
+     * @param trace the recorder, or {@code null} to stop recording
+     * @return {@code this}
+     */
+    public TestConnector trace(TraceRecorder trace) {
+        this.trace = trace;
+        return this;
+    }
+
+    public TraceRecorder trace() {
+        return trace;
+    }
+
+    public TestConnectorConnection connection() {
+        return connection;
+    }
+
+    public TestConnectorAction action() {
+        return action;
+    }
+
+    public TestConnectorLogger logger() {
+        return logger;
+    }
+
+    /**
+     * Releases the resources of the harness, i.e. stops the background
+     * thread of asynchronous logging.  The client should not be used
+     * afterwards.
+     */
+    public void close() {
+        logger.close();
+    }
+
     @Override
     public IConnectorConnection getConnectorConnection() {
         return connection;
@@ -44,17 +184,17 @@ public class TestConnector implements IConnector {
 
     @Override
     public IConnectorFile newFile() {
-        throw new UnsupportedOperationException("not implemented");
+        return files.tempFile();
     }
 
     @Override
     public IConnectorFile newFile(File file) {
-        throw new UnsupportedOperationException("not implemented");
+        return files.file(file.getPath());
     }
 
     @Override
     public IConnectorFile newFile(String path) {
-        throw new UnsupportedOperationException("not implemented");
+        return files.file(path);
     }
 
 }
@@ -1,11 +1,18 @@
 package com.cleo.labs.connector.testing;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
-import java.util.regex.Pattern;
 
 import com.cleo.connector.api.ConnectorClient;
 import com.cleo.connector.api.directory.Entry;
@@ -23,6 +30,14 @@ public class TestConnectorAction implements IConnectorAction {
     private CommandProcessor commandProcessor;
     private IConnector connector;
     private ConnectorClient connectorClient;
+    private Path inbox;
+    private Path outbox;
+    private Path sentbox;
+    private Path receivedbox;
+    private List<StreamFilter> filters = Collections.emptyList();
+    private PatternCache patterns = new PatternCache(256, false);
+    private Interrupter interrupter = null;
+    private TransferIds transferIds = TransferIds.uuid();
 
     public TestConnectorAction(IConnector connector, ConnectorClient connectorClient) throws ConnectorPropertyException {
         this.values = new HashMap<>();
@@ -31,14 +46,199 @@ public class TestConnectorAction implements IConnectorAction {
         this.connectorClient = connectorClient;
     }
 
+    /**
+     * Sets a property value, discarding any values memoized by the host.
+     * @param key the property name
+     * @param value the value
+     * @return {@code this}
+     */
     public TestConnectorAction set(String key, String value) {
         values.put(key, value);
+        if (connector instanceof TestConnector) {
+            TestConnectorHost host = ((TestConnector) connector).host();
+            if (host != null) {
+                host.invalidate();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Sets the local directory received files are written to.
+     * @param inbox the inbox directory
+     * @return {@code this}
+     */
+    public TestConnectorAction inbox(Path inbox) {
+        this.inbox = inbox;
+        return this;
+    }
+
+    /**
+     * Sets the local directory multi-file PUT sources are found in.
+     * @param outbox the outbox directory
+     * @return {@code this}
+     */
+    public TestConnectorAction outbox(Path outbox) {
+        this.outbox = outbox;
         return this;
     }
 
+    public TestConnectorAction sentbox(Path sentbox) {
+        this.sentbox = sentbox;
+        return this;
+    }
+
+    public TestConnectorAction receivedbox(Path receivedbox) {
+        this.receivedbox = receivedbox;
+        return this;
+    }
+
+    public Path inbox() {
+        return inbox;
+    }
+
+    public Path outbox() {
+        return outbox;
+    }
+
+    private static String box(Path box, String name) throws ConnectorHostException {
+        if (box == null) {
+            throw new ConnectorHostException(name + " not configured");
+        }
+        return box.toString() + box.getFileSystem().getSeparator();
+    }
+
+    /**
+     * Finds the outbox files matching a source, which is a path relative to
+     * the outbox whose last element may be a glob pattern, e.g.
+     * {@code "batch/*.edi"}.
+     * @param source the source path or pattern
+     * @return the matching files, sorted by name
+     * @throws ConnectorHostException if the outbox is not configured
+     * @throws IOException if the directory can not be listed
+     */
+    public IConnectorOutgoing[] findFiles(String source) throws ConnectorHostException, IOException {
+        box(outbox, "outbox");
+        String path = TestConnectorFile.normalize(source);
+        int slash = path.lastIndexOf('/');
+        String folder = slash < 0 ? "" : path.substring(0, slash + 1);
+        String glob = path.substring(slash + 1);
+        Path dir = outbox.resolve(folder);
+        List<Path> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, glob.isEmpty() ? "*" : glob)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)) {
+                    found.add(file);
+                }
+            }
+        }
+        found.sort(null);
+        IConnectorOutgoing[] sources = new IConnectorOutgoing[found.size()];
+        for (int i = 0; i < sources.length; i++) {
+            String name = found.get(i).getFileName().toString();
+            sources[i] = new FileSource(new LocalFile(outbox, folder + name), name);
+        }
+        return sources;
+    }
+
+    /**
+     * Creates the inbox file a GET of {@code entry} is received into.
+     * @param destination a path relative to the inbox: an existing folder (or
+     * {@code null} for the inbox itself) receives the file under its remote
+     * name, anything else names the file
+     * @param entry the remote file
+     * @param transferId the transfer ID
+     * @return the destination
+     * @throws ConnectorHostException if the inbox is not configured
+     * @throws IOException if the destination folder can not be created
+     */
+    public IConnectorIncoming getIncoming(String destination, Entry entry, String transferId)
+            throws ConnectorHostException, IOException {
+        box(inbox, "inbox");
+        String path = TestConnectorFile.normalize(destination);
+        LocalFile file = new LocalFile(inbox, path);
+        if (file.isDirectory()) {
+            String name = TestConnectorFile.normalize(entry.getPath());
+            file = new LocalFile(inbox, (path.isEmpty() ? "" : path + "/") + name.substring(name.lastIndexOf('/') + 1));
+        }
+        Path parent = file.toPath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        FileCollector collector = new FileCollector(file);
+        collector.setTransferId(transferId);
+        return collector;
+    }
+
+    /**
+     * Sets the chain of filters applied to transfer streams by
+     * {@link #getFilterInputStream(IConnectorOutgoing)} and
+     * {@link #getFilterOutputStream(IConnectorIncoming, boolean)}, in order
+     * from the innermost (nearest the file) to the outermost (nearest the
+     * connector).  The filtered stream is set on the source or collector
+     * and handed out by its next {@code getStream} only, so a source reused
+     * for a later transfer starts again from a fresh, unfiltered stream.
+     * @param filters the filters
+     * @return {@code this}
+     */
+    public TestConnectorAction filters(StreamFilter...filters) {
+        this.filters = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(filters)));
+        return this;
+    }
+
+    public List<StreamFilter> filters() {
+        return filters;
+    }
+
+    /**
+     * Sets the cache of compiled patterns used by {@link #match(String, String)},
+     * which also determines whether unprefixed patterns are globs or
+     * regular expressions (the default).
+     * @param patterns the pattern cache
+     * @return {@code this}
+     */
+    public TestConnectorAction patterns(PatternCache patterns) {
+        this.patterns = patterns;
+        return this;
+    }
+
+    public PatternCache patterns() {
+        return patterns;
+    }
+
+    /**
+     * Reports the flag of an {@link Interrupter} from {@link #isInterrupted()}.
+     * @param interrupter the interrupter, or {@code null} to never interrupt
+     * @return {@code this}
+     */
+    public TestConnectorAction interrupter(Interrupter interrupter) {
+        this.interrupter = interrupter;
+        return this;
+    }
+
+    public Interrupter interrupter() {
+        return interrupter;
+    }
+
+    /**
+     * Sets how {@link #genTransferId(String)} generates transfer IDs:
+     * {@link TransferIds#uuid()} (the default, as in the host), or a
+     * contention-free generator for load tests.
+     * @param transferIds the generator
+     * @return {@code this}
+     */
+    public TestConnectorAction transferIds(TransferIds transferIds) {
+        this.transferIds = transferIds;
+        return this;
+    }
+
+    public TransferIds transferIds() {
+        return transferIds;
+    }
+
     @Override
     public boolean isInterrupted() {
-        return false;
+        return interrupter != null && interrupter.isInterrupted();
     }
 
     @Override
@@ -59,33 +259,48 @@ public class TestConnectorAction implements IConnectorAction {
 
     @Override
     public String genTransferId(String schemeName) {
-        return schemeName+"-"+UUID.randomUUID().toString();
+        return transferIds.next(schemeName);
     }
 
     @Override
     public IConnectorOutgoing[] findFiles(IConnectorCommand connectorCommand)
             throws ConnectorHostException, IOException {
-        throw new ConnectorHostException("not implemented");
+        return findFiles(connectorCommand.getSource());
     }
 
     @Override
     public IConnectorIncoming getIncoming(IConnectorCommand connectorCommand, Entry entry, String transferId)
             throws ConnectorHostException, IOException {
-        throw new ConnectorHostException("not implemented");
+        return getIncoming(connectorCommand.getDestination(), entry, transferId);
     }
 
     @Override
     public void getFilterOutputStream(IConnectorIncoming incoming, boolean append)
             throws ConnectorHostException, IOException {
         if (append) {
-            throw new ConnectorHostException("not implemented");
+            if (!(incoming instanceof FileCollector)) {
+                throw new ConnectorHostException("append is only supported for file destinations");
+            }
+            ((FileCollector) incoming).append(true);
+        }
+        if (!filters.isEmpty()) {
+            OutputStream out = incoming.getStream();
+            for (StreamFilter filter : filters) {
+                out = filter.wrap(out);
+            }
+            incoming.setStream(out);
         }
-        // no-op
     }
 
     @Override
     public void getFilterInputStream(IConnectorOutgoing outgoing) throws ConnectorHostException, IOException {
-        // no-op
+        if (!filters.isEmpty()) {
+            InputStream in = outgoing.getStream();
+            for (StreamFilter filter : filters) {
+                in = filter.wrap(in);
+            }
+            outgoing.setStream(in);
+        }
     }
 
     @Override
@@ -95,7 +310,7 @@ public class TestConnectorAction implements IConnectorAction {
 
     @Override
     public boolean match(String pattern, String name) {
-        return Pattern.matches(pattern, name);
+        return patterns.matches(pattern, name);
     }
 
     @Override
@@ -124,21 +339,21 @@ public class TestConnectorAction implements IConnectorAction {
 
     @Override
     public String getInbox() throws Exception {
-        throw new ConnectorHostException("not implemented");
+        return box(inbox, "inbox");
     }
 
     @Override
     public String getOutbox() throws Exception {
-        throw new ConnectorHostException("not implemented");
+        return box(outbox, "outbox");
     }
 
     @Override
     public String getSentbox() throws Exception {
-        throw new ConnectorHostException("not implemented");
+        return box(sentbox, "sentbox");
     }
 
     @Override
     public String getReceivedbox() throws Exception {
-        throw new ConnectorHostException("not implemented");
+        return box(receivedbox, "receivedbox");
     }
 }
\ No newline at end of file
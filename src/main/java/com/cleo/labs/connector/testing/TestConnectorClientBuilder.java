@@ -1,8 +1,11 @@
 package com.cleo.labs.connector.testing;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.UnaryOperator;
@@ -12,36 +15,9 @@ import com.cleo.connector.api.ConnectorConfig;
 import com.cleo.connector.api.ConnectorException;
 import com.cleo.connector.api.annotations.Client;
 import com.cleo.connector.api.property.CommonProperty;
-import com.cleo.connector.shell.interfaces.IConnectorHost;
-import com.google.common.io.ByteStreams;
 
 public class TestConnectorClientBuilder {
 
-    /**
-     * Finds a constructor compatiable with an argument list using {@code isAssignableFrom}, which
-     * is more flexible than just using {@code getDeclaredConstructor} with a list of types.
-     * @param clientClass the class to construct
-     * @param args the argument list to match
-     * @return an appropriate {@code Constructor}
-     * @throws NoSuchMethodException if no appropriate constructor can be found
-     */
-    @SuppressWarnings("unchecked")
-    private static Constructor<? extends ConnectorClient> findConstructor(Class<? extends ConnectorClient> clientClass, List<Object> args) throws NoSuchMethodException {
-        constructor:
-        for (Constructor<?> constructor : clientClass.getDeclaredConstructors()) {
-            Class<?>[] types = constructor.getParameterTypes();
-            if (types.length == args.size()) {
-                for (int i = 0; i < types.length; i++) {
-                    if (!types[i].isAssignableFrom(args.get(i).getClass())) {
-                        continue constructor;
-                    }
-                }
-                return (Constructor<? extends ConnectorClient>) constructor;
-            }
-        }
-        throw new NoSuchMethodException();
-    }
-
     /**
      * A helper class to keep track of settings to apply in the
      * {@code build} step.
@@ -67,31 +43,53 @@ public class TestConnectorClientBuilder {
         }
     }
 
+    SchemaMetadata metadata;
     Client clientAnnotation;
     ConnectorConfig schema;
     Class<? extends ConnectorClient> clientClass;
     private PrintStream logger;
+    private int logCapacity = 0;
+    private boolean captureEvents = false;
+    private boolean offHeapEvents = false;
     private List<Setting> settings;
+    private boolean memoizeProperties = false;
+    private NetworkProfile network = null;
+    private boolean connectionStats = false;
+    private MemoryFileStore files = null;
+    private Path boxes = null;
+    private StreamFilter[] filters = null;
+    private PatternCache patterns = null;
+    private TransferIds transferIds = null;
 
+    /**
+     * Creates a builder for a schema class.  The reflective work (annotation
+     * lookups, schema construction and {@code setup()}, and constructor
+     * resolution) is done once per schema class and cached, so creating
+     * builders and building clients repeatedly is cheap.
+     * @param schemaClass the connector schema class
+     * @throws ConnectorException if the class is not a usable schema class
+     */
     public TestConnectorClientBuilder(Class<? extends ConnectorConfig> schemaClass) throws ConnectorException {
-        clientAnnotation = schemaClass.getAnnotation(Client.class);
-        if (clientAnnotation == null) {
-            throw new ConnectorException(String.format("not a ConnectorShell schema class: @Client annotation not found: %s", schemaClass.getSimpleName()));
-        }
-        clientClass = clientAnnotation.value();
-        try {
-            schema = schemaClass.newInstance();
-        } catch (InstantiationException | IllegalAccessException e) {
-            throw new ConnectorException(e);
-        }
-        schema.setup();
-        logger = new PrintStream(ByteStreams.nullOutputStream());
+        metadata = SchemaMetadata.of(schemaClass);
+        clientAnnotation = metadata.clientAnnotation();
+        clientClass = metadata.clientClass();
+        schema = metadata.prototype();
+        logger = null;
         settings = new ArrayList<>();
     }
 
     /**
-     * Select a logging destination (/dev/null by default).
-     * @param logger where the log output should go
+     * Discards the cached schema metadata, so that the next builder for
+     * each schema class starts from scratch.
+     */
+    public static void clearCache() {
+        SchemaMetadata.clear();
+    }
+
+    /**
+     * Select a logging destination (by default log output is discarded
+     * without being formatted).
+     * @param logger where the log output should go, or {@code null} to discard it
      * @return {@code this}
      */
     public TestConnectorClientBuilder logger(PrintStream logger) {
@@ -99,6 +97,19 @@ public class TestConnectorClientBuilder {
         return this;
     }
 
+    /**
+     * Write log output from a background thread through a bounded ring
+     * buffer, so that formatting and I/O are not charged to the connector
+     * under test.  Lines that don't fit are dropped and counted (see
+     * {@link TestConnectorLogger#dropped()}).
+     * @param capacity the ring buffer capacity, or 0 to log synchronously (the default)
+     * @return {@code this}
+     */
+    public TestConnectorClientBuilder asyncLogging(int capacity) {
+        this.logCapacity = capacity;
+        return this;
+    }
+
     /**
      * Record some settings to apply at {@code build} time.
      * @param keyValue an (even-length-or-else) list of key/value Strings
@@ -124,6 +135,115 @@ public class TestConnectorClientBuilder {
         return this;
     }
 
+    /**
+     * Capture every event logged by the connector in a typed
+     * {@link LogEvents} store, available from {@link TestConnectorLogger#events()}.
+     * @param offHeap {@code true} to keep the event records in direct buffers
+     * @return {@code this}
+     */
+    public TestConnectorClientBuilder captureEvents(boolean offHeap) {
+        this.captureEvents = true;
+        this.offHeapEvents = offHeap;
+        return this;
+    }
+
+    /**
+     * Memoize property values resolved through the host, so that connectors
+     * reading properties on hot paths don't measure the harness.  Values
+     * set later through {@link TestConnector#set(String, String)} still take effect.
+     * @param memoizeProperties {@code true} to memoize property values
+     * @return {@code this}
+     */
+    public TestConnectorClientBuilder memoizeProperties(boolean memoizeProperties) {
+        this.memoizeProperties = memoizeProperties;
+        return this;
+    }
+
+    /**
+     * Emulate a network link (bandwidth, latency and jitter) on the
+     * connection streams the harness hands to the connector.
+     * @param network the link to emulate, or {@code null} for an unshaped connection
+     * @return {@code this}
+     */
+    public TestConnectorClientBuilder network(NetworkProfile network) {
+        this.network = network;
+        return this;
+    }
+
+    /**
+     * Count and time the reads and writes on the connection streams the
+     * harness hands to the connector (see {@link ConnectionStats}).  Off by
+     * default, since timing adds two clock reads to every call.
+     * @param connectionStats {@code true} to collect connection statistics
+     * @return {@code this}
+     */
+    public TestConnectorClientBuilder connectionStats(boolean connectionStats) {
+        this.connectionStats = connectionStats;
+        return this;
+    }
+
+    /**
+     * Back the files created through {@code IConnector.newFile} with a given
+     * store, for example to share one store across clients (by default each
+     * client gets its own off-heap store).
+     * @param files the store
+     * @return {@code this}
+     */
+    public TestConnectorClientBuilder files(MemoryFileStore files) {
+        this.files = files;
+        return this;
+    }
+
+    /**
+     * Back the host inbox, outbox, sentbox and receivedbox with directories of
+     * those names under {@code root}, created as needed, so that multi-file
+     * PUT ({@code findFiles}) and GET ({@code getIncoming}) work.
+     * @param root the parent of the box directories
+     * @return {@code this}
+     */
+    public TestConnectorClientBuilder boxes(Path root) {
+        this.boxes = root;
+        return this;
+    }
+
+    /**
+     * Have the host apply a chain of filters (compression, encryption,
+     * checksums) to transfer streams, innermost first.  The filters, and
+     * the CPU time they record, are shared by all clients from this builder.
+     * @param filters the filters
+     * @return {@code this}
+     */
+    public TestConnectorClientBuilder filters(StreamFilter...filters) {
+        this.filters = filters;
+        return this;
+    }
+
+    /**
+     * Configure pattern matching for {@code match}: how many compiled
+     * patterns to cache (256 by default), and whether patterns without a
+     * {@code glob:} or {@code regex:} prefix are globs, as in the host, or
+     * regular expressions (the default).
+     * @param capacity the number of compiled patterns to keep
+     * @param glob {@code true} for glob patterns by default
+     * @return {@code this}
+     */
+    public TestConnectorClientBuilder patterns(int capacity, boolean glob) {
+        this.patterns = new PatternCache(capacity, glob);
+        return this;
+    }
+
+    /**
+     * Have the host generate transfer IDs with {@code transferIds} instead
+     * of {@code UUID.randomUUID()}, e.g. {@link TransferIds#counter()} so
+     * that ID generation does not contend under load.
+     * @param transferIds the generator
+     * @return {@code this}
+     */
+    public TestConnectorClientBuilder transferIds(TransferIds transferIds) {
+        this.transferIds = transferIds;
+        return this;
+    }
+
     /**
      * Set the standard DEBUG flag on or off.
      * @param debug the DEBUG flag setting
@@ -153,16 +273,58 @@ public class TestConnectorClientBuilder {
             for (Object arg : args) {
                 constructorArgs.add(arg);
             }
-            Constructor<? extends ConnectorClient> constructor = findConstructor(clientClass, constructorArgs);
+            Constructor<? extends ConnectorClient> constructor = metadata.constructor(constructorArgs);
             ConnectorClient client = constructor.newInstance(constructorArgs.toArray());
-            TestConnector connector = new TestConnector(logger, client);
+            TestConnector connector = new TestConnector(logger, logCapacity, client);
+            connector.connection().network(network).stats(connectionStats);
+            if (files != null) {
+                connector.files(files);
+            }
+            if (boxes != null) {
+                connector.action()
+                    .inbox(Files.createDirectories(boxes.resolve("inbox")))
+                    .outbox(Files.createDirectories(boxes.resolve("outbox")))
+                    .sentbox(Files.createDirectories(boxes.resolve("sentbox")))
+                    .receivedbox(Files.createDirectories(boxes.resolve("receivedbox")));
+            }
+            if (filters != null) {
+                connector.action().filters(filters);
+            }
+            if (patterns != null) {
+                connector.action().patterns(patterns);
+            }
+            if (transferIds != null) {
+                connector.action().transferIds(transferIds);
+            }
+            if (captureEvents) {
+                connector.logger().events(new LogEvents(offHeapEvents, Long.MAX_VALUE));
+            }
             settings.forEach(s -> s.apply(connector));
-            IConnectorHost connectorHost = new TestConnectorHost(client);
+            TestConnectorHost connectorHost = new TestConnectorHost(client, metadata).memoize(memoizeProperties);
+            connector.host(connectorHost);
             client.setup(connector, schema, connectorHost);
+            TestConnector.register(client, connector);
             return client;
-        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+        } catch (NoSuchMethodException | InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException | IOException e) {
             throw new ConnectorException(e);
         }
     }
 
+    /**
+     * Builds a number of clients sharing the same settings, e.g. one per
+     * virtual user in a load test.  Each client gets its own harness, to be
+     * closed with {@link TestConnector#close()} when asynchronous logging is on.
+     * @param count the number of clients to build
+     * @param args the (possibly empty) list of additional constructor arguments
+     * @return the clients
+     * @throws ConnectorException if there is a problem
+     */
+    public List<ConnectorClient> buildMany(int count, Object...args) throws ConnectorException {
+        List<ConnectorClient> clients = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            clients.add(build(args));
+        }
+        return clients;
+    }
+
 }
@@ -8,22 +8,68 @@ import com.cleo.connector.api.helper.NetworkConnection;
 import com.cleo.connector.shell.interfaces.IConnectorConnection;
 
 public class TestConnectorConnection implements IConnectorConnection {
+    private NetworkLink link;
+    private final ConnectionStats stats;
+    private boolean counting;
 
     public TestConnectorConnection() {
+        this.link = null;
+        this.stats = new ConnectionStats();
+        this.counting = false;
+    }
+
+    /**
+     * @return the byte, call and blocking counts for the connection streams,
+     * which stay empty unless counting is turned on with {@link #stats(boolean)}
+     */
+    public ConnectionStats stats() {
+        return stats;
+    }
+
+    /**
+     * Turns on (or off) counting and timing the connection streams handed
+     * out from now on.  Counting is off by default, since timing every call
+     * adds two {@code System.nanoTime()} calls to each read and write.
+     * @param counting {@code true} to count
+     * @return {@code this}
+     */
+    public TestConnectorConnection stats(boolean counting) {
+        this.counting = counting;
+        return this;
+    }
+
+    /**
+     * Emulates a network link on the connection streams (or with
+     * {@code null}, stops emulating one).
+     * @param profile the link to emulate, or {@code null}
+     * @return {@code this}
+     */
+    public TestConnectorConnection network(NetworkProfile profile) {
+        this.link = profile != null && profile.isShaped() ? new NetworkLink(profile) : null;
+        return this;
     }
 
     @Override
     public InputStream getConnectionInputStream(InputStream in) throws IOException {
-        return in;
+        if (link != null) {
+            in = link.new ShapedInputStream(in);
+        }
+        return counting ? stats.new CountingInputStream(in) : in;
     }
 
     @Override
     public OutputStream getConnectionOutputStream(OutputStream out) throws IOException {
-        return out;
+        if (link != null) {
+            out = link.new ShapedOutputStream(out);
+        }
+        return counting ? stats.new CountingOutputStream(out) : out;
     }
 
     @Override
     public void connect(NetworkConnection conn) throws IOException {
+        if (link != null) {
+            link.connect();
+        }
     }
 
-}
\ No newline at end of file
+}
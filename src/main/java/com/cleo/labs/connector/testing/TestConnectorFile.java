@@ -0,0 +1,107 @@
+package com.cleo.labs.connector.testing;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.cleo.connector.api.interfaces.IConnectorFile;
+
+/**
+ * The common shape of the files handed out by the harness in place of the
+ * host's own files: a {@code java.io.File}-style view of a path, plus
+ * methods to open its content, which the host would otherwise do on the
+ * connector's behalf.  Of these, only {@link #getRelative()} belongs to
+ * {@code IConnectorFile}; the rest are the harness's own, implemented by
+ * {@link MemoryFile} and {@link LocalFile}.
+ */
+public abstract class TestConnectorFile implements IConnectorFile {
+    protected final String path;
+
+    protected TestConnectorFile(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Normalizes a path to {@code /}-separated form without leading or
+     * trailing separators.
+     * @param path the path
+     * @return the normalized path ({@code ""} for the root)
+     */
+    static String normalize(String path) {
+        String normal = path == null ? "" : path.replace('\\', '/').replaceAll("/+", "/");
+        if (normal.startsWith("/")) {
+            normal = normal.substring(1);
+        }
+        if (normal.endsWith("/")) {
+            normal = normal.substring(0, normal.length() - 1);
+        }
+        return normal;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getName() {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * @return the parent path, or {@code null} for a top-level file
+     */
+    public String getParent() {
+        int slash = path.lastIndexOf('/');
+        return slash < 0 ? (path.isEmpty() ? null : "") : path.substring(0, slash);
+    }
+
+    @Override
+    public String getRelative() {
+        return path;
+    }
+
+    public abstract boolean exists();
+    public abstract boolean isFile();
+    public abstract boolean isDirectory();
+    public abstract long length();
+    public abstract long lastModified();
+    public abstract boolean delete();
+    public abstract boolean mkdir();
+    public abstract boolean mkdirs();
+    public abstract boolean createNewFile() throws IOException;
+    public abstract boolean renameTo(IConnectorFile dest);
+
+    /**
+     * @return the names of the files in this directory, or {@code null} if this is not a directory
+     */
+    public abstract String[] list();
+
+    /**
+     * Opens the file for reading.
+     * @return a stream of the file content
+     * @throws IOException if the file does not exist
+     */
+    public abstract InputStream openInputStream() throws IOException;
+
+    /**
+     * Opens the file for writing, creating it if needed.
+     * @param append {@code true} to append to the existing content
+     * @return a stream to the file content
+     * @throws IOException if the file can not be created
+     */
+    public abstract OutputStream openOutputStream(boolean append) throws IOException;
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj != null && obj.getClass() == getClass() && ((TestConnectorFile) obj).path.equals(path);
+    }
+
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+}
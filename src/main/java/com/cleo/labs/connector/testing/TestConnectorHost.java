@@ -1,19 +1,18 @@
 package com.cleo.labs.connector.testing;
 
+import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.cleo.connector.api.ConnectorAuth;
 import com.cleo.connector.api.ConnectorClient;
 import com.cleo.connector.api.ConnectorException;
 import com.cleo.connector.api.annotations.Auth;
 import com.cleo.connector.api.annotations.Client;
-import com.cleo.connector.api.annotations.Command;
 import com.cleo.connector.api.annotations.Connector;
-import com.cleo.connector.api.annotations.Property;
 import com.cleo.connector.api.command.ConnectorCommandName;
 import com.cleo.connector.api.interfaces.IConnectorProperty;
 import com.cleo.connector.api.property.ConnectorPropertyException;
@@ -22,55 +21,119 @@ import com.cleo.connector.shell.interfaces.IConnectorHost;
 public class TestConnectorHost implements IConnectorHost {
 
     private ConnectorClient client;
-    private boolean shuttingDown;
-    private Set<String> pendingCache;
+    private volatile SchemaMetadata metadata;
+    private volatile SchemaMetadata.SupportedCommands commands;
+    private volatile Map<String, IConnectorProperty<?>> properties;
+    private boolean memoize;
+    private ConcurrentHashMap<String, Optional<String>> values;
+    private volatile boolean shuttingDown;
+    private PendingTracker pendingCache;
 
-    public TestConnectorHost(ConnectorClient client) {
+    TestConnectorHost(ConnectorClient client, SchemaMetadata metadata) {
         this.client = client;
+        this.metadata = metadata;
+        this.commands = null;
+        this.properties = null;
+        this.memoize = false;
+        this.values = new ConcurrentHashMap<>();
         this.shuttingDown = false;
-        this.pendingCache = new HashSet<>();
+        this.pendingCache = new PendingTracker();
+    }
+
+    public TestConnectorHost(ConnectorClient client) {
+        this(client, null);
+    }
+
+    /**
+     * Returns the schema metadata, resolved from the client's schema on
+     * first use if not supplied at construction (the schema is not
+     * available until the client has been set up).  Only the property
+     * index needs it: the annotation checks read the schema class directly
+     * (the JVM caches annotations), so they keep working for schemas that
+     * can not be resolved, e.g. ones without {@code @Client}.
+     * @return the metadata
+     */
+    private SchemaMetadata metadata() {
+        if (metadata == null) {
+            try {
+                metadata = SchemaMetadata.of(client.getConnectorConfig().getClass());
+            } catch (ConnectorException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return metadata;
+    }
+
+    /**
+     * Turns on (or off) memoization of resolved property values.  Memoized
+     * values are discarded whenever a property is changed through
+     * {@link TestConnector#set(String, String)} or {@link TestConnectorAction#set(String, String)}.
+     * @param memoize {@code true} to memoize values
+     * @return {@code this}
+     */
+    public TestConnectorHost memoize(boolean memoize) {
+        this.memoize = memoize;
+        invalidate();
+        return this;
+    }
+
+    /**
+     * @return the pending-transfer cache, with in-flight metrics
+     */
+    public PendingTracker pending() {
+        return pendingCache;
+    }
+
+    /**
+     * Discards any memoized property values.
+     */
+    public void invalidate() {
+        values.clear();
+    }
+
+    private <A extends Annotation> A annotation(Class<A> type) {
+        return client.getConnectorConfig().getClass().getAnnotation(type);
     }
 
     @Override
     public String getSchemeName() {
-        Connector connectorAnnotation = client.getConnectorConfig().getClass().getAnnotation(Connector.class);
+        Connector connectorAnnotation = annotation(Connector.class);
         if (connectorAnnotation != null) {
             return connectorAnnotation.scheme();
         }
         return null;
     }
 
+    private SchemaMetadata.SupportedCommands commands() {
+        if (commands == null) {
+            commands = SchemaMetadata.commands(client.getClass());
+        }
+        return commands;
+    }
+
     @Override
     public boolean isSupported(ConnectorCommandName command) {
-        return isSupported(command.getCommandName());
+        return commands().commands.contains(command);
     }
 
     @Override
     public boolean isSupported(String command) {
-        for (Method method : client.getClass().getDeclaredMethods()) {
-            Command commandAnnotation = method.getAnnotation(Command.class);
-            if (commandAnnotation != null && commandAnnotation.name().getCommandName().equals(command)) {
-                return true;
-            }
-        }
-        return false;
+        return commands().names.contains(command);
     }
 
     @Override
     public boolean hasConnectorClient() {
-        Client clientAnnotation = client.getConnectorConfig().getClass().getAnnotation(Client.class);
-        return clientAnnotation != null;
+        return annotation(Client.class) != null;
     }
 
     @Override
     public boolean hasConnectorAuth() {
-        Auth authAnnotation = client.getConnectorConfig().getClass().getAnnotation(Auth.class);
-        return authAnnotation != null;
+        return annotation(Auth.class) != null;
     }
 
     @Override
     public ConnectorAuth getConnectorAuth() throws ConnectorException {
-        Auth authAnnotation = client.getConnectorConfig().getClass().getAnnotation(Auth.class);
+        Auth authAnnotation = annotation(Auth.class);
         if (authAnnotation != null) {
             try {
                 return authAnnotation.value().newInstance();
@@ -81,26 +144,31 @@ public class TestConnectorHost implements IConnectorHost {
         return null;
     }
 
-    private IConnectorProperty<?> getProperty(String name) {
-        for (Field field : client.getConnectorConfig().getClass().getDeclaredFields()) {
-            Property propertyAnnotation = field.getAnnotation(Property.class);
-            if (propertyAnnotation != null) {
+    /**
+     * Returns the property index for this client's schema instance, built
+     * on first use from the per-class field index.
+     * @return the property index
+     */
+    private Map<String, IConnectorProperty<?>> properties() {
+        if (properties == null) {
+            Map<String, IConnectorProperty<?>> index = new HashMap<>();
+            for (Map.Entry<String, Field> e : metadata().properties().entrySet()) {
                 try {
-                    field.setAccessible(true);
-                    IConnectorProperty<?> property = (IConnectorProperty<?>)field.get(client.getConnectorConfig());
-                    if (property.getName().equals(name)) {
-                        return property;
-                    }
-                } catch (IllegalArgumentException | IllegalAccessException e) {
+                    index.put(e.getKey(), (IConnectorProperty<?>)e.getValue().get(client.getConnectorConfig()));
+                } catch (IllegalArgumentException | IllegalAccessException ex) {
                     // ignore it and keep looking
                 }
             }
+            properties = index;
         }
-        return null;
+        return properties;
     }
 
-    @Override
-    public Optional<String> getPropertyValue(String key) {
+    private IConnectorProperty<?> getProperty(String name) {
+        return properties().get(name);
+    }
+
+    private Optional<String> resolvePropertyValue(String key) {
         IConnectorProperty<?> property = getProperty(key);
         if (property != null) {
             try {
@@ -112,6 +180,14 @@ public class TestConnectorHost implements IConnectorHost {
         return Optional.empty();
     }
 
+    @Override
+    public Optional<String> getPropertyValue(String key) {
+        if (memoize) {
+            return values.computeIfAbsent(key, this::resolvePropertyValue);
+        }
+        return resolvePropertyValue(key);
+    }
+
     @Override
     public boolean isConnectorProperty(String name) {
         return getProperty(name) != null;
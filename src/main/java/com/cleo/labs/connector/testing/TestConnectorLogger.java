@@ -1,7 +1,19 @@
 package com.cleo.labs.connector.testing;
 
+import static com.cleo.connector.api.command.ConnectorCommandName.GET;
+import static com.cleo.connector.api.command.ConnectorCommandName.PUT;
+
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import com.cleo.connector.api.command.ConnectorCommandResult;
 import com.cleo.connector.api.command.ConnectorCommandResult.Status;
@@ -24,10 +36,59 @@ import com.cleo.connector.api.logging.ThrowableParms.ThrowableLogger;
 import com.cleo.connector.shell.interfaces.IConnectorLogger;
 import com.cleo.connector.shell.streams.ConnectorPipedInputStream;
 import com.cleo.connector.shell.streams.ConnectorPipedOutputStream;
+import com.cleo.labs.connector.testing.CommandLatencies.Phase;
+import com.cleo.labs.connector.testing.LogEvents.Kind;
 import com.google.common.base.Strings;
 
 public class TestConnectorLogger implements IConnectorLogger {
     private PrintStream out;
+    private boolean enabled;
+    private AsyncLogWriter async;
+    private CommandLatencies latencies;
+    private ThreadLocal<String> running;
+    private volatile String lastCommand;
+    private final AtomicInteger active = new AtomicInteger();
+    private volatile String lastRequest;
+    private volatile String lastFile;
+    private ConcurrentHashMap<String, Pending> requests;
+    private ConcurrentHashMap<String, Pending> files;
+    private LogEvents events;
+    private int entryLimit = Integer.MAX_VALUE;
+
+    /**
+     * The start times of the phases in progress for one command, oldest
+     * first, so that a phase may end on a different thread than it began.
+     * Only the most recent {@code LIMIT} are kept, so phases that never end
+     * don't accumulate.
+     */
+    private static class Pending {
+        private static final int LIMIT = 1024;
+        private final long[] starts = new long[LIMIT];
+        private int first = 0;
+        private int size = 0;
+
+        public synchronized void start(long at) {
+            if (size == LIMIT) {
+                first = (first + 1) % LIMIT;
+                size--;
+            }
+            starts[(first + size) % LIMIT] = at;
+            size++;
+        }
+
+        /**
+         * @return the oldest start time, or 0 if none is pending
+         */
+        public synchronized long finish() {
+            if (size == 0) {
+                return 0;
+            }
+            long at = starts[first];
+            first = (first + 1) % LIMIT;
+            size--;
+            return at;
+        }
+    }
 
     private static String pad(String prefix, Optional<String> s) {
         if (s.isPresent()) {
@@ -53,9 +114,9 @@ public class TestConnectorLogger implements IConnectorLogger {
         }
         return "";
     }
-    private static String pad(Entry e) {
-        if (e != null) {
-            return String.format(" \"%s\"", e.getPath());
+    private static String quote(String path) {
+        if (path != null) {
+            return String.format(" \"%s\"", path);
         }
         return "";
     }
@@ -142,26 +203,223 @@ public class TestConnectorLogger implements IConnectorLogger {
     }
     */
 
+    /**
+     * Writes a line, building it on the drain thread if logging is
+     * asynchronous.  The line may be built after the call returns, so it
+     * must capture only values copied from the parameters (strings, numbers,
+     * enums and throwables), never the mutable parameter objects themselves.
+     * @param line builds the line
+     */
+    private void println(Supplier<String> line) {
+        if (async != null) {
+            async.write(line);
+        } else {
+            out.println(line.get());
+        }
+    }
+
+    /**
+     * Writes a line with {@link #println(Supplier)}, formatting it on the
+     * drain thread if logging is asynchronous.
+     * @param format the {@code String.format} format of the line
+     * @param args the values to format, copied from the parameters
+     */
+    private void println(String format, Object...args) {
+        println(() -> String.format(format, args));
+    }
+
     @Override
     public void logHint(String content) {
-        out.println(String.format("HINT: %s", content));
+        if (events != null) {
+            events.record(Kind.HINT, null, 0);
+        }
+        if (!enabled) {
+            return;
+        }
+        println("HINT: %s", content);
     }
 
     @Override
     public void debug(String message, Throwable throwable) {
+        if (events != null) {
+            events.record(Kind.DEBUG, null, 0);
+        }
+        if (!enabled) {
+            return;
+        }
         if (message != null || throwable != null) {
             if (message == null) {
-                out.println(String.format("DEBUG: %s", throwable.getMessage()));
+                println("DEBUG: %s", throwable.getMessage());
             } else if (throwable == null) {
-                out.println(String.format("DEBUG: %s", message));
+                println("DEBUG: %s", message);
             } else {
-                out.println(String.format("DEBUG: %s - %s", message, throwable.getMessage()));
+                println("DEBUG: %s - %s", message, throwable.getMessage());
             }
         }
     }
 
+    /**
+     * Creates a logger writing synchronously to a {@code PrintStream}.
+     * @param out the log destination, or {@code null} to discard logs without formatting them
+     */
     public TestConnectorLogger(PrintStream out) {
+        this(out, 0);
+    }
+
+    /**
+     * Creates a logger that, if {@code capacity} is positive, hands lines to
+     * a bounded ring buffer drained to {@code out} by a background thread, so
+     * that formatting and I/O are not charged to the connector.  Lines that
+     * don't fit in the buffer are dropped and counted.
+     * @param out the log destination, or {@code null} to discard logs without formatting them
+     * @param capacity the ring buffer capacity, or 0 to write synchronously
+     */
+    public TestConnectorLogger(PrintStream out, int capacity) {
         this.out = out;
+        this.enabled = out != null;
+        this.async = enabled && capacity > 0 ? new AsyncLogWriter(out, capacity) : null;
+        this.latencies = new CommandLatencies();
+        this.running = new ThreadLocal<>();
+        this.lastCommand = null;
+        this.lastRequest = null;
+        this.lastFile = null;
+        this.requests = new ConcurrentHashMap<>();
+        this.files = new ConcurrentHashMap<>();
+        this.events = null;
+    }
+
+    /**
+     * Starts (or with {@code null}, stops) capturing every logged event in
+     * a typed event store.
+     * @param events the event store, or {@code null}
+     * @return {@code this}
+     */
+    public TestConnectorLogger events(LogEvents events) {
+        this.events = events;
+        return this;
+    }
+
+    /**
+     * @return the event store, or {@code null} if events are not being captured
+     */
+    public LogEvents events() {
+        return events;
+    }
+
+    /**
+     * Limits the number of {@code DIR} entries logged per result, so that
+     * listing a large folder with logging on does not log every entry.
+     * @param entryLimit the maximum number of entries to log
+     * @return {@code this}
+     */
+    public TestConnectorLogger entryLimit(int entryLimit) {
+        this.entryLimit = entryLimit;
+        return this;
+    }
+
+    /**
+     * @return {@code true} if log lines are being formatted and written
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the number of lines dropped because the asynchronous ring buffer was full
+     */
+    public long dropped() {
+        return async == null ? 0 : async.dropped();
+    }
+
+    /**
+     * Waits for asynchronously queued lines to be written.
+     * @param timeout the maximum time to wait
+     * @param unit the units of {@code timeout}
+     * @return {@code true} if everything was written in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        return async == null || async.flush(timeout, unit);
+    }
+
+    /**
+     * Writes any asynchronously queued lines and stops the background
+     * thread.  Lines logged afterwards are dropped.
+     */
+    public void close() {
+        if (async != null) {
+            async.close();
+        }
+    }
+
+    /**
+     * Returns the latency histograms recorded from the logging calls made by
+     * the connector, keyed by command and phase.  Request phases are keyed
+     * by the command running through {@link Commands} (or by the request
+     * type for commands run otherwise), file phases by {@code GET} or
+     * {@code PUT}.
+     * @return the latencies
+     */
+    public CommandLatencies latencies() {
+        return latencies;
+    }
+
+    /**
+     * Marks the start of a command run through {@link Commands} on the
+     * calling thread.  Logging calls from other threads (e.g. the
+     * connector's I/O threads) are attributed to the command started last,
+     * while any is running.
+     * @param command the command, e.g. {@code "PUT"}
+     * @return the command that was running on the calling thread, to pass to {@link #end(String)}
+     */
+    String begin(String command) {
+        String previous = running.get();
+        running.set(command);
+        lastCommand = command;
+        active.incrementAndGet();
+        return previous;
+    }
+
+    /**
+     * Marks the end of a command started with {@link #begin(String)}.
+     * @param previous the value returned by {@code begin}
+     */
+    void end(String previous) {
+        if (active.decrementAndGet() == 0) {
+            lastCommand = null;
+        }
+        if (previous == null) {
+            running.remove();
+        } else {
+            running.set(previous);
+        }
+    }
+
+    /**
+     * @param fallback the key to use if no command is running through {@link Commands}
+     * @return the command running on the calling thread, or else the last one started
+     */
+    private String command(String fallback) {
+        String command = running.get();
+        if (command == null) {
+            command = lastCommand;
+        }
+        return command != null ? command : fallback;
+    }
+
+    private static Pending pending(ConcurrentHashMap<String, Pending> phases, String command) {
+        Pending pending = phases.get(command);
+        return pending != null ? pending : phases.computeIfAbsent(command, k -> new Pending());
+    }
+
+    private void finish(ConcurrentHashMap<String, Pending> phases, String command, Phase phase) {
+        Pending pending = command == null ? null : phases.get(command);
+        if (pending != null) {
+            long at = pending.finish();
+            if (at != 0) {
+                latencies.record(command, phase, System.nanoTime() - at);
+            }
+        }
     }
 
     @Override
@@ -171,55 +429,75 @@ public class TestConnectorLogger implements IConnectorLogger {
 
     @Override
     public void logFile(FileParms parms) {
+        lastFile = parms.getIncoming() != null ? GET.name() : PUT.name();
+        pending(files, lastFile).start(System.nanoTime());
+        if (events != null) {
+            events.record(parms.getIncoming() != null ? Kind.FILE_GET : Kind.FILE_PUT, null, parms.getFileNum());
+        }
+        if (!enabled) {
+            return;
+        }
+        String entry = parms.getEntry() == null ? null : parms.getEntry().getPath();
+        int fileNum = parms.getFileNum();
+        int fileCount = parms.getFileCount();
         if (parms.getIncoming() != null) {
-            out.println("FILE: retrieving file "+
-                    pad(parms.getEntry())+
-                    pad(" to ",destName(parms.getIncoming()))+
-                    pad(" file ",parms.getFileNum())+
-                    pad(" of ",parms.getFileCount()));
+            String path = destPath(parms.getIncoming());
+            String name = parms.getIncoming().getName();
+            println(() -> String.format("FILE: retrieving file %s%s%s%s",
+                    quote(entry),
+                    pad(" to ",streamName(path, name)),
+                    pad(" file ",fileNum),
+                    pad(" of ",fileCount)));
         } else if (parms.getOutgoing() != null) {
-            out.println("FILE: storing file "+
-                    sourceName(parms.getOutgoing())+
-                    pad(" to ",pad(parms.getEntry()))+
-                    pad(" file ",parms.getFileNum())+
-                    pad(" of ",parms.getFileCount()));
+            String path = sourcePath(parms.getOutgoing());
+            String name = parms.getOutgoing().getName();
+            println(() -> String.format("FILE: storing file %s%s%s%s",
+                    streamName(path, name),
+                    pad(" to ",quote(entry)),
+                    pad(" file ",fileNum),
+                    pad(" of ",fileCount)));
         }
     }
 
-    private String sourceName(IConnectorOutgoing outgoing) {
-        String result = null;
+    /**
+     * The harness's own sources and collectors hand a filtered stream out
+     * only once, to the transfer, so their streams are not inspected for a
+     * piped resource path (they are never piped).
+     */
+    private static boolean isHarness(Object o) {
+        return o.getClass().getPackage() == TestConnectorLogger.class.getPackage();
+    }
+
+    /**
+     * @return the file or piped resource path of the source, or {@code null} for a plain stream
+     */
+    private static String sourcePath(IConnectorOutgoing outgoing) {
         if (outgoing.isFile()) {
-            result = outgoing.getFile().getRelative();
-        } else {
-            if (outgoing.getStream() instanceof ConnectorPipedInputStream) {
-                String uriResourcePath = ((ConnectorPipedInputStream)outgoing.getStream()).getUriResourcePath();
-                if (uriResourcePath != null) {
-                    result = uriResourcePath;
-                }
-            }
-            if (result == null) {
-                result = "*stream*"+pad("/", outgoing.getName());
-            }
+            return outgoing.getFile().getRelative();
         }
-        return result;
+        InputStream stream = isHarness(outgoing) ? null : outgoing.getStream();
+        if (stream instanceof ConnectorPipedInputStream) {
+            return ((ConnectorPipedInputStream)stream).getUriResourcePath();
+        }
+        return null;
     }
 
-    private String destName(IConnectorIncoming incoming) {
-        String result = null;
+    /**
+     * @return the file or piped resource path of the destination, or {@code null} for a plain stream
+     */
+    private static String destPath(IConnectorIncoming incoming) {
         if (incoming.isFile()) {
-            result = incoming.getFile().getRelative();
-        } else {
-            if (incoming.getStream() instanceof ConnectorPipedOutputStream) {
-                String uriResourcePath = ((ConnectorPipedOutputStream)incoming.getStream()).getUriResourcePath();
-                if (uriResourcePath != null) {
-                    result = uriResourcePath;
-                }
-            }
-            if (result == null) {
-                result = "*stream*"+pad("/", incoming.getName());
-            }
+            return incoming.getFile().getRelative();
         }
-        return result;
+        OutputStream stream = isHarness(incoming) ? null : incoming.getStream();
+        if (stream instanceof ConnectorPipedOutputStream) {
+            return ((ConnectorPipedOutputStream)stream).getUriResourcePath();
+        }
+        return null;
+    }
+
+    private static String streamName(String path, String name) {
+        return path != null ? path : "*stream*"+pad("/", name);
     }
 
     @Override
@@ -229,25 +507,43 @@ public class TestConnectorLogger implements IConnectorLogger {
 
     @Override
     public ConnectorCommandResult logCommandResult(CommandResultParms parms) {
-        ConnectorCommandResult result = parms.getConnectorCommandResult();
-        if (result != null) {
+        finish(files, command(lastFile), Phase.FILE_TO_RESULT);
+        ConnectorCommandResult result = parms.getConnectorCommandResult() != null
+                ? parms.getConnectorCommandResult()
+                : new ConnectorCommandResult(parms.getStatus(), parms.getStatusMessage());
+        if (events != null) {
+            events.record(Kind.RESULT, parms.getStatus(), parms.getFileSize());
+        }
+        if (!enabled) {
+            return result;
+        }
+        if (parms.getConnectorCommandResult() != null) {
             if (result.getStatus() == ConnectorCommandResult.Status.Exception && result.getException().isPresent()) {
-                out.println("EXCEPTION: "+result.getException().get());
+                println("EXCEPTION: %s", result.getException().get().toString());
             } else if (result.isSuccess()) {
                 if (result.getDirEntries().isPresent()) {
-                    result.getDirEntries().get().forEach(e -> out.println("ENTRY: "+e.toString()));
+                    List<Entry> entries = result.getDirEntries().get();
+                    entries.stream().limit(entryLimit).forEach(e -> println("ENTRY: %s", e.toString()));
+                    if (entries.size() > entryLimit) {
+                        println("ENTRY: ... %d more", entries.size()-entryLimit);
+                    }
                 }
             }
-        } else {
-            result = new ConnectorCommandResult(parms.getStatus(), parms.getStatusMessage());
-        }
-        out.println("RESULT: "+parms.getStatus().name()+
-                pad(" ", parms.getStatusMessage())+
-                pad(" cwd=", result.getDirCurrent())+
-                pad(" size=", parms.getFileSize())+
-                padDate(" modified=", parms.getLastModified())+
-                pad(" copyPath=", parms.getCopyPath())+
-                (parms.isDeleteFailed() ? "deleteError" : ""));
+        }
+        Status status = parms.getStatus();
+        String message = parms.getStatusMessage();
+        Optional<String> cwd = result.getDirCurrent();
+        long size = parms.getFileSize();
+        long modified = parms.getLastModified();
+        String copyPath = parms.getCopyPath();
+        boolean deleteFailed = parms.isDeleteFailed();
+        println(() -> String.format("RESULT: %s%s%s%s%s%s%s", status.name(),
+                pad(" ", message),
+                pad(" cwd=", cwd),
+                pad(" size=", size),
+                padDate(" modified=", modified),
+                pad(" copyPath=", copyPath),
+                deleteFailed ? "deleteError" : ""));
         return result;
     }
 
@@ -258,7 +554,16 @@ public class TestConnectorLogger implements IConnectorLogger {
 
     @Override
     public void logRequest(RequestParms parms) {
-        out.println(String.format("REQUEST: %s type=%s", parms.getRequestText(), parms.getRequestType()));
+        String requestType = Strings.isNullOrEmpty(parms.getRequestType()) ? "REQUEST" : parms.getRequestType();
+        lastRequest = requestType;
+        pending(requests, command(requestType)).start(System.nanoTime());
+        if (events != null) {
+            events.record(Kind.REQUEST, null, 0);
+        }
+        if (!enabled) {
+            return;
+        }
+        println("REQUEST: %s type=%s", parms.getRequestText(), parms.getRequestType());
     }
 
     @Override
@@ -268,34 +573,45 @@ public class TestConnectorLogger implements IConnectorLogger {
 
     @Override
     public void logResponse(ResponseParms parms) {
-        // get default value from input parms -- perhaps they'll be adjusted within this method
-        String responseLine = parms.getResponseLine();
+        finish(requests, command(lastRequest), Phase.REQUEST_TO_RESPONSE);
+        if (events != null) {
+            events.record(Kind.RESPONSE, parms.getStatus(),
+                    parms.getResponseCode() == null ? -1 : parms.getResponseCode());
+        }
+        if (!enabled) {
+            return;
+        }
+
+        // copy the input parms -- the line is assembled from them on the drain thread
+        String line = parms.getResponseLine();
         Status status = parms.getStatus();
         String message = parms.getStatusMessage();
+        Integer code = parms.getResponseCode();
+        String text = parms.getResponseText();
+        println(() -> formatResponse(line, status, message, code, text));
+    }
 
+    private static String formatResponse(String responseLine, Status status, String message, Integer code, String text) {
         // possibly adjust responseLine
-        if (parms.getResponseCode() != null &&
-            (parms.getResponseText() == null || !parms.getResponseText().startsWith(parms.getResponseCode().toString()))) {
-            responseLine = parms.getResponseCode().toString();
+        if (code != null && (text == null || !text.startsWith(code.toString()))) {
+            responseLine = code.toString();
         }
-        if (parms.getResponseText() != null) {
+        if (text != null) {
             if (responseLine.length() > 0) {
               responseLine += " ";
             }
-            responseLine += parms.getResponseText();
+            responseLine += text;
         }
 
         // possibly adjust status
-        if (status == null && parms.getResponseCode() != null) {
-            if (parms.getResponseCode() >= 400) {
+        if (status == null && code != null) {
+            if (code >= 400) {
                 status = Status.Error;
             }
         }
 
-        // finally, log the response event
-        out.println("RESULT: "+status+
-                pad(" ", responseLine)+
-                pad(" ", message));
+        // finally, format the response event
+        return String.format("RESULT: %s%s%s", status, pad(" ", responseLine), pad(" ", message));
     }
 
     @Override
@@ -305,9 +621,19 @@ public class TestConnectorLogger implements IConnectorLogger {
 
     @Override
     public void logDetail(DetailParms parms) {
-        out.println((parms.isError() ? "ERROR:" : parms.isWarning() ? "WARNING:" : "DETAIL:")+
-                pad(" message=",parms.getMessage())+
-                pad(" level=",parms.getLevel()));
+        if (events != null) {
+            events.record(parms.isError() ? Kind.ERROR : parms.isWarning() ? Kind.WARNING : Kind.DETAIL,
+                    null, parms.getLevel());
+        }
+        if (!enabled) {
+            return;
+        }
+        String label = parms.isError() ? "ERROR:" : parms.isWarning() ? "WARNING:" : "DETAIL:";
+        String message = parms.getMessage();
+        int level = parms.getLevel();
+        println(() -> String.format("%s%s%s", label,
+                pad(" message=",message),
+                pad(" level=",level)));
     }
 
     @Override
@@ -327,12 +653,17 @@ public class TestConnectorLogger implements IConnectorLogger {
 
     @Override
     public void logThrowable(ThrowableParms parms) {
-        Throwable e = parms.getThrowable();
-        if (e instanceof Exception) {
-            out.println("EXCEPTION: "+e.toString());
-        } else {
-            out.println("ERROR: "+e.toString());
+        if (events != null) {
+            events.record(Kind.THROWABLE, null, 0);
         }
-        e.printStackTrace(out);
+        if (!enabled) {
+            return;
+        }
+        Throwable e = parms.getThrowable();
+        println(() -> {
+            StringWriter trace = new StringWriter();
+            e.printStackTrace(new PrintWriter(trace));
+            return String.format("%s%s%n%s", e instanceof Exception ? "EXCEPTION: " : "ERROR: ", e, trace.toString().trim());
+        });
     }
 }
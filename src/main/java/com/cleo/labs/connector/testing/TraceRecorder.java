@@ -0,0 +1,291 @@
+package com.cleo.labs.connector.testing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the commands run through {@link Commands} on a client to a compact
+ * binary trace file: the command, its paths, the payload size, when it
+ * started and how long it took.  Replay the trace with {@link TraceReplayer}.
+ * <pre>
+ * try (TraceRecorder recorder = new TraceRecorder(Paths.get("session.trace"))) {
+ *     TestConnector.of(client).trace(recorder);
+ *     // ... run the session ...
+ * }
+ * </pre>
+ * Each event takes a few bytes: times are variable-length microseconds
+ * relative to the previous event, and each distinct path is written once
+ * and then referred to by number.  Options and parameters of commands are
+ * not recorded.
+ */
+public class TraceRecorder implements Closeable {
+
+    private static final int MAGIC = 0x43545243; // "CTRC"
+    private static final int VERSION = 1;
+
+    /**
+     * The commands that can be traced, in the order of their codes in the file.
+     */
+    static final String[] COMMANDS = {"DIR", "PUT", "GET", "DELETE", "MKDIR", "RMDIR", "RENAME", "ATTR"};
+
+    /**
+     * One recorded command.
+     */
+    public static class Event {
+        private final String command;
+        private final String source;
+        private final String destination;
+        private final long bytes;
+        private final long startMicros;
+        private final long durationMicros;
+        private final boolean success;
+
+        Event(String command, String source, String destination, long bytes, long startMicros, long durationMicros,
+                boolean success) {
+            this.command = command;
+            this.source = source;
+            this.destination = destination;
+            this.bytes = bytes;
+            this.startMicros = startMicros;
+            this.durationMicros = durationMicros;
+            this.success = success;
+        }
+
+        /**
+         * @return the command, e.g. {@code "PUT"}
+         */
+        public String command() {
+            return command;
+        }
+        /**
+         * @return the remote path of the command (the local source name for {@code PUT})
+         */
+        public String source() {
+            return source;
+        }
+        /**
+         * @return the remote destination of {@code PUT} and {@code RENAME},
+         * the pattern of {@code DIR}, the local name for {@code GET}, or {@code null}
+         */
+        public String destination() {
+            return destination;
+        }
+        /**
+         * @return the payload size of {@code PUT} and {@code GET}, if known
+         */
+        public long bytes() {
+            return bytes;
+        }
+        /**
+         * @return the time the command started, from the start of the recording
+         */
+        public long startMicros() {
+            return startMicros;
+        }
+        public long durationMicros() {
+            return durationMicros;
+        }
+        public boolean success() {
+            return success;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("+%.3fms %s %s%s%s %.3fms%s", startMicros / 1e3, command, source,
+                    destination == null ? "" : " " + destination, bytes > 0 ? " (" + bytes + " bytes)" : "",
+                    durationMicros / 1e3, success ? "" : " failed");
+        }
+    }
+
+    private final DataOutputStream out;
+    private final long origin = System.nanoTime();
+    private final Map<String, Integer> strings = new HashMap<>();
+    private long previous = 0;
+    private long events = 0;
+    private IOException error = null;
+
+    /**
+     * @param file the trace file, which is replaced
+     * @throws IOException if the file can not be created
+     */
+    public TraceRecorder(Path file) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+    }
+
+    /**
+     * @return the number of events recorded
+     */
+    public synchronized long events() {
+        return events;
+    }
+
+    /**
+     * Records a command.  Commands that can not be traced are ignored, and
+     * errors writing the trace are reported by {@link #close()} rather than
+     * failing the command.
+     * @param command the command, e.g. {@code "PUT"}
+     * @param source the remote path (the local source name for {@code PUT})
+     * @param destination the destination or pattern, or {@code null}
+     * @param bytes the payload size, or 0
+     * @param startNanos the {@code System.nanoTime()} the command started
+     * @param durationNanos how long it took
+     * @param success whether it succeeded
+     */
+    public synchronized void record(String command, String source, String destination, long bytes, long startNanos,
+            long durationNanos, boolean success) {
+        int code = code(command);
+        if (code < 0 || error != null) {
+            return;
+        }
+        long start = (startNanos - origin) / 1000;
+        try {
+            out.writeByte(code << 1 | (success ? 1 : 0));
+            writeVarLong(out, zigzag(start - previous)); // commands finish out of order
+            writeVarLong(out, durationNanos / 1000);
+            writeVarLong(out, Math.max(0, bytes));
+            writeString(source);
+            writeString(destination);
+        } catch (IOException e) {
+            error = e;
+            return;
+        }
+        previous = start;
+        events++;
+    }
+
+    private static int code(String command) {
+        for (int i = 0; i < COMMANDS.length; i++) {
+            if (COMMANDS[i].equals(command)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes a string as its number in the string table, plus 1 (0 is
+     * {@code null}), followed by the string itself the first time.
+     */
+    private void writeString(String s) throws IOException {
+        if (s == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        Integer index = strings.get(s);
+        if (index != null) {
+            writeVarLong(out, index + 1);
+        } else {
+            index = strings.size();
+            strings.put(s, index);
+            writeVarLong(out, index + 1);
+            out.writeUTF(s);
+        }
+    }
+
+    private static long zigzag(long n) {
+        return (n << 1) ^ (n >> 63);
+    }
+
+    private static long unzigzag(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+    private static void writeVarLong(DataOutputStream out, long n) throws IOException {
+        while ((n & ~0x7FL) != 0) {
+            out.writeByte((int) (n & 0x7F) | 0x80);
+            n >>>= 7;
+        }
+        out.writeByte((int) n);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long n = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            n |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return n;
+            }
+        }
+        throw new IOException("malformed trace: variable-length number too long");
+    }
+
+    private static String readString(DataInputStream in, List<String> strings) throws IOException {
+        long index = readVarLong(in);
+        if (index == 0) {
+            return null;
+        } else if (index == strings.size() + 1) {
+            strings.add(in.readUTF());
+        } else if (index > strings.size()) {
+            throw new IOException("malformed trace: bad string reference " + index);
+        }
+        return strings.get((int) index - 1);
+    }
+
+    /**
+     * Reads a trace file.
+     * @param file the trace file
+     * @return the events, in the order they finished
+     * @throws IOException if the file can not be read or is not a trace
+     */
+    public static List<Event> read(Path file) throws IOException {
+        List<Event> events = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readUnsignedByte() != VERSION) {
+                throw new IOException(file + " is not a version " + VERSION + " command trace");
+            }
+            List<String> strings = new ArrayList<>();
+            long start = 0;
+            while (true) {
+                int header;
+                try {
+                    header = in.readUnsignedByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                int code = header >>> 1;
+                if (code >= COMMANDS.length) {
+                    throw new IOException("malformed trace: unknown command " + code);
+                }
+                start += unzigzag(readVarLong(in));
+                long duration = readVarLong(in);
+                long bytes = readVarLong(in);
+                String source = readString(in, strings);
+                String destination = readString(in, strings);
+                events.add(new Event(COMMANDS[code], source, destination, bytes, start, duration, (header & 1) != 0));
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Closes the trace file.
+     * @throws IOException if the trace could not be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            out.close();
+        } catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+}
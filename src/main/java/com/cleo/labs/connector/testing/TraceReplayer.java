@@ -0,0 +1,269 @@
+package com.cleo.labs.connector.testing;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import com.cleo.connector.api.ConnectorClient;
+import com.cleo.connector.api.command.ConnectorCommandResult;
+
+/**
+ * Replays a trace written by {@link TraceRecorder} against a client, at the
+ * recorded pace, scaled, or as fast as possible, and compares the timing
+ * with the recording:
+ * <pre>
+ * TraceReplayer.Report report = new TraceReplayer(Paths.get("session.trace"))
+ *     .speed(10)
+ *     .run(client);
+ * </pre>
+ * Each command is started on schedule (open loop) by a pool of
+ * {@link #concurrency(int)} threads, so a connector that can not keep up
+ * shows as start lag rather than a slower schedule.  {@code PUT}s send a
+ * {@link GeneratedSource} of the recorded size, and {@code GET}s receive
+ * into a {@link DigestCollector}.  Commands that depend on each other (a
+ * {@code PUT} then a {@code GET} of the same file) may overlap when
+ * replayed faster than they were recorded.
+ */
+public class TraceReplayer {
+
+    /**
+     * The recorded and replayed durations of one command.
+     */
+    public static class Comparison {
+        private final LatencyHistogram recorded = new LatencyHistogram();
+        private final LatencyHistogram replayed = new LatencyHistogram();
+
+        public LatencyHistogram recorded() {
+            return recorded;
+        }
+        public LatencyHistogram replayed() {
+            return replayed;
+        }
+        /**
+         * @return the ratio of the replayed to the recorded median duration
+         */
+        public double ratio() {
+            long recordedMedian = recorded.percentile(50);
+            return recordedMedian == 0 ? 0.0 : (double) replayed.percentile(50) / recordedMedian;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("p50 %.3fms -> %.3fms, p99 %.3fms -> %.3fms (x%.2f)",
+                    recorded.percentile(50) / 1e6, replayed.percentile(50) / 1e6,
+                    recorded.percentile(99) / 1e6, replayed.percentile(99) / 1e6, ratio());
+        }
+    }
+
+    /**
+     * The outcome of a replay.
+     */
+    public static class Report {
+        private final double speed;
+        private long events;
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder changed = new LongAdder();
+        private long recordedNanos;
+        private long replayedNanos;
+        private final LatencyHistogram startLag = new LatencyHistogram();
+        private final Map<String, Comparison> commands = new ConcurrentHashMap<>();
+
+        private Report(double speed) {
+            this.speed = speed;
+        }
+
+        public long events() {
+            return events;
+        }
+        /**
+         * @return the commands that failed when replayed
+         */
+        public long failed() {
+            return failed.sum();
+        }
+        /**
+         * @return the commands whose success differed from the recording
+         */
+        public long changed() {
+            return changed.sum();
+        }
+        /**
+         * @return the time from the first start to the last finish in the recording
+         */
+        public long recordedNanos() {
+            return recordedNanos;
+        }
+        /**
+         * @return the time from the first start to the last finish in the replay
+         */
+        public long replayedNanos() {
+            return replayedNanos;
+        }
+        /**
+         * @return how late commands started relative to their (scaled) schedule
+         */
+        public LatencyHistogram startLag() {
+            return startLag;
+        }
+        /**
+         * @return the recorded and replayed durations of each command, sorted by command
+         */
+        public Map<String, Comparison> commands() {
+            return new TreeMap<>(commands);
+        }
+        public Comparison command(String command) {
+            return commands.computeIfAbsent(command, k -> new Comparison());
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder();
+            s.append(String.format("%d events at %s: %.3fs recorded, %.3fs replayed, %d failed, %d changed, start lag %s",
+                    events, speed == 0 ? "full speed"
+                    : speed == Math.rint(speed) ? String.format("%dx", (long) speed) : String.format("%.2fx", speed), recordedNanos / 1e9,
+                    replayedNanos / 1e9, failed(), changed(), startLag));
+            commands().forEach((k, v) -> s.append(String.format("%n  %-8s %s", k, v)));
+            return s.toString();
+        }
+    }
+
+    private final List<TraceRecorder.Event> events;
+    private double speed = 1.0;
+    private int concurrency = 16;
+
+    /**
+     * @param file a trace file written by {@link TraceRecorder}
+     * @throws IOException if the trace can not be read
+     */
+    public TraceReplayer(Path file) throws IOException {
+        this(TraceRecorder.read(file));
+    }
+
+    public TraceReplayer(List<TraceRecorder.Event> events) {
+        this.events = new ArrayList<>(events);
+        this.events.sort(Comparator.comparingLong(TraceRecorder.Event::startMicros));
+    }
+
+    /**
+     * Sets the pace of the replay relative to the recording.
+     * @param speed e.g. 1 for the recorded pace, 10 for ten times faster, or 0 for as fast as possible
+     * @return {@code this}
+     */
+    public TraceReplayer speed(double speed) {
+        if (speed < 0) {
+            throw new IllegalArgumentException("speed cannot be negative: " + speed);
+        }
+        this.speed = speed;
+        return this;
+    }
+
+    /**
+     * @param concurrency the most commands replayed at once (16 by default)
+     * @return {@code this}
+     */
+    public TraceReplayer concurrency(int concurrency) {
+        this.concurrency = concurrency;
+        return this;
+    }
+
+    private static Commands.Invocation<?> invocation(TraceRecorder.Event event) {
+        switch (event.command()) {
+        case "DIR":
+            return Commands.dir(event.source()).pattern(event.destination());
+        case "PUT":
+            return Commands.put(new GeneratedSource(event.source() == null ? "replay" : event.source(), event.bytes()),
+                    event.destination());
+        case "GET":
+            return Commands.get(event.source(),
+                    new DigestCollector(DigestCollector.Algorithm.CRC32).name(event.destination()));
+        case "DELETE":
+            return Commands.delete(event.source());
+        case "MKDIR":
+            return Commands.mkdir(event.source());
+        case "RMDIR":
+            return Commands.rmdir(event.source());
+        case "RENAME":
+            return Commands.rename(event.source(), event.destination());
+        case "ATTR":
+            return Commands.attr(event.source());
+        default:
+            throw new IllegalArgumentException("unknown command: " + event.command());
+        }
+    }
+
+    /**
+     * Replays the trace.
+     * @param client the client, built by {@link TestConnectorClientBuilder}
+     * @return the report
+     * @throws InterruptedException if interrupted while replaying
+     */
+    public Report run(ConnectorClient client) throws InterruptedException {
+        Report report = new Report(speed);
+        report.events = events.size();
+        if (events.isEmpty()) {
+            return report;
+        }
+        long first = events.get(0).startMicros();
+        long recordedEnd = first;
+        for (TraceRecorder.Event event : events) {
+            recordedEnd = Math.max(recordedEnd, event.startMicros() + event.durationMicros());
+        }
+        report.recordedNanos = (recordedEnd - first) * 1000;
+        AtomicLong end = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+        long begin = System.nanoTime();
+        try {
+            for (TraceRecorder.Event event : events) {
+                long scheduled = speed == 0 ? begin : begin + (long) ((event.startMicros() - first) * 1000 / speed);
+                long wait;
+                while ((wait = scheduled - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(wait);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+                Commands.Invocation<?> invocation = invocation(event);
+                executor.execute(() -> {
+                    long start = System.nanoTime();
+                    report.startLag.record(start - scheduled);
+                    boolean success;
+                    try {
+                        Object result = invocation.go(client);
+                        success = result instanceof ConnectorCommandResult
+                                ? ((ConnectorCommandResult) result).isSuccess() : result != null;
+                    } catch (Exception e) {
+                        success = false;
+                    }
+                    long finish = System.nanoTime();
+                    Comparison comparison = report.command(event.command());
+                    comparison.recorded.record(event.durationMicros() * 1000);
+                    comparison.replayed.record(finish - start);
+                    if (!success) {
+                        report.failed.increment();
+                    }
+                    if (success != event.success()) {
+                        report.changed.increment();
+                    }
+                    end.accumulateAndGet(finish - begin, Math::max);
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        report.replayedNanos = end.get();
+        return report;
+    }
+}
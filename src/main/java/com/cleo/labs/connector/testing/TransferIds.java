@@ -0,0 +1,62 @@
+package com.cleo.labs.connector.testing;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Generates the transfer IDs returned by {@code IConnectorAction.genTransferId}.
+ * <p>
+ * The host uses {@link UUID#randomUUID()}, as does {@link #uuid()}, but that
+ * draws on a shared {@code SecureRandom} and so serializes threads starting
+ * transfers at once, which can hide a connector's own scaling under load.
+ * {@link #random()} and {@link #counter()} are contention-free alternatives.
+ */
+public interface TransferIds {
+
+    /**
+     * @param schemeName the connector scheme
+     * @return a new transfer ID
+     */
+    String next(String schemeName);
+
+    /**
+     * @return IDs of the form {@code scheme-uuid} from {@link UUID#randomUUID()}, as in the host
+     */
+    static TransferIds uuid() {
+        return schemeName -> schemeName + "-" + UUID.randomUUID();
+    }
+
+    /**
+     * Returns IDs of the same form as {@link #uuid()}, version 4 UUIDs drawn
+     * from {@link ThreadLocalRandom} rather than a shared {@code SecureRandom}.
+     * They are unique in practice but not unpredictable.
+     * @return the generator
+     */
+    static TransferIds random() {
+        return schemeName -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long msb = (random.nextLong() & ~0xF000L) | 0x4000L;
+            long lsb = (random.nextLong() & ~(0xC000L << 48)) | (0x8000L << 48);
+            return schemeName + "-" + new UUID(msb, lsb);
+        };
+    }
+
+    /**
+     * Returns IDs of the form {@code scheme-run-stripe-count}, from a
+     * counter striped by thread: each thread takes a stripe number once and
+     * then counts up on its own, so IDs are unique, increase within a thread,
+     * and cost no more than the string concatenation.  The run prefix keeps
+     * IDs from different generators (and test runs) apart.
+     * @return the generator
+     */
+    static TransferIds counter() {
+        String run = Long.toHexString(ThreadLocalRandom.current().nextLong() >>> 32);
+        AtomicInteger stripes = new AtomicInteger();
+        ThreadLocal<long[]> stripe = ThreadLocal.withInitial(() -> new long[] {stripes.getAndIncrement(), 0});
+        return schemeName -> {
+            long[] s = stripe.get();
+            return schemeName + "-" + run + "-" + s[0] + "-" + (++s[1]);
+        };
+    }
+}
@@ -0,0 +1,59 @@
+package com.cleo.labs.connector.testing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The worker pool shared by {@link Batch} and {@link LoadDriver}: starts a
+ * number of identical workers on an executor, waits for all of them, and
+ * shuts the executor down.
+ */
+class Workers {
+
+    /**
+     * The body of a worker, which typically loops claiming operations from
+     * a shared counter until there are none left.
+     */
+    interface Worker {
+        /**
+         * @param worker the number of the worker, {@code 0..workers-1}
+         * @throws Exception to fail the run
+         */
+        void run(int worker) throws Exception;
+    }
+
+    private Workers() {
+    }
+
+    /**
+     * Runs the workers to completion.  The executor is shut down when they
+     * finish, or when one fails or the caller is interrupted.
+     * @param executor the executor, with room for {@code workers} concurrent tasks
+     * @param workers the number of workers
+     * @param worker the body of each worker
+     * @throws InterruptedException if interrupted while waiting for the workers
+     * @throws IllegalStateException wrapping the failure of a worker
+     */
+    static void run(ExecutorService executor, int workers, Worker worker) throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<>(workers);
+        try {
+            for (int w = 0; w < workers; w++) {
+                int n = w;
+                futures.add(executor.submit(() -> {
+                    worker.run(n);
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.cleo.labs.connector.testing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    /**
+     * A clock the test moves by hand.
+     */
+    private static class Clock {
+        long now = 1000;
+
+        void advance(long duration, TimeUnit unit) {
+            now += unit.toNanos(duration);
+        }
+    }
+
+    @Test
+    public void testBurstIsFree() {
+        Clock clock = new Clock();
+        NetworkLink.TokenBucket bucket = new NetworkLink.TokenBucket(1000, 500, () -> clock.now);
+        assertEquals(0, bucket.take(500));
+    }
+
+    @Test
+    public void testDebtIsPaidAtTheRate() {
+        Clock clock = new Clock();
+        NetworkLink.TokenBucket bucket = new NetworkLink.TokenBucket(1000, 500, () -> clock.now);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), bucket.take(1000));
+        clock.advance(250, TimeUnit.MILLISECONDS);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(250), bucket.take(0));
+    }
+
+    @Test
+    public void testRefillIsCappedAtBurst() {
+        Clock clock = new Clock();
+        NetworkLink.TokenBucket bucket = new NetworkLink.TokenBucket(1000, 500, () -> clock.now);
+        bucket.take(500);
+        clock.advance(10, TimeUnit.SECONDS);
+        assertEquals(0, bucket.take(500));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1), bucket.take(1));
+    }
+
+    @Test
+    public void testLongIdleHighRateDoesNotOverflow() {
+        Clock clock = new Clock();
+        long rate = 10L * 1000 * 1000 * 1000; // 10 GB/s
+        NetworkLink.TokenBucket bucket = new NetworkLink.TokenBucket(rate, rate, () -> clock.now);
+        // (now - refilled) * rate overflows a long after about a second at this rate
+        clock.advance(1, TimeUnit.HOURS);
+        assertEquals(0, bucket.take(rate));
+        clock.advance(1, TimeUnit.HOURS);
+        long wait = bucket.take(2 * rate);
+        assertEquals(TimeUnit.SECONDS.toNanos(1), wait);
+    }
+
+    @Test
+    public void testClockGoingBackwardsAddsNothing() {
+        Clock clock = new Clock();
+        NetworkLink.TokenBucket bucket = new NetworkLink.TokenBucket(1000, 500, () -> clock.now);
+        bucket.take(500);
+        clock.advance(-1, TimeUnit.SECONDS);
+        long wait = bucket.take(100);
+        assertTrue("wait " + wait, wait >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void testHugeDebtSaturates() {
+        Clock clock = new Clock();
+        NetworkLink.TokenBucket bucket = new NetworkLink.TokenBucket(1, 1, () -> clock.now);
+        assertEquals(Long.MAX_VALUE, bucket.take(Long.MAX_VALUE));
+    }
+}